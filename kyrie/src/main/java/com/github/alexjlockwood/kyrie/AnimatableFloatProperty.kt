@@ -0,0 +1,12 @@
+package com.github.alexjlockwood.kyrie
+
+/** A [FloatProperty] whose value is computed from a list of [Animation]s. */
+internal class AnimatableFloatProperty(
+        timeline: PropertyTimeline,
+        slot: Int,
+        animations: List<Animation<*, Float>>
+) : AnimatableProperty<Float>(timeline, slot, animations), FloatProperty {
+
+    override val floatValue: Float
+        get() = timeline.getFloatValue(slot)
+}
@@ -0,0 +1,12 @@
+package com.github.alexjlockwood.kyrie
+
+/** An [IntProperty] whose value is computed from a list of [Animation]s. */
+internal class AnimatableIntProperty(
+        timeline: PropertyTimeline,
+        slot: Int,
+        animations: List<Animation<*, Int>>
+) : AnimatableProperty<Int>(timeline, slot, animations), IntProperty {
+
+    override val intValue: Int
+        get() = timeline.getIntValue(slot)
+}
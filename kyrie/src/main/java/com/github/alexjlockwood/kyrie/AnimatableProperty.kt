@@ -0,0 +1,92 @@
+package com.github.alexjlockwood.kyrie
+
+import java.util.ArrayList
+import java.util.Collections
+import java.util.Comparator
+
+/**
+ * A [Property] whose value is computed from a list of [Animation]s at the timeline's
+ * current play time. The [PropertyTimeline] compiles the property's animations into flat
+ * arrays and evaluates them at the current play time; this class simply reads the result.
+ *
+ * @param V The property's value type.
+ */
+internal open class AnimatableProperty<V>(
+        protected val timeline: PropertyTimeline,
+        protected val slot: Int,
+        animations: List<Animation<*, V>>
+) : Property<V> {
+
+    /** The property's animations, sorted by start time. */
+    val animations: List<Animation<*, V>>
+
+    val totalDuration: Long
+
+    override val animatedValue: V
+        get() {
+            val animation = animations[timeline.getCurrentAnimationIndex(slot)]
+            return animation.getAnimatedValue(timeline.getCurrentFraction(slot))
+        }
+
+    override val version: Int
+        get() = timeline.getVersion(slot)
+
+    init {
+        // Sort the animations.
+        this.animations = ArrayList(animations)
+        Collections.sort(this.animations, ANIMATION_COMPARATOR)
+
+        // Compute the total duration.
+        var totalDuration: Long = 0
+        run {
+            var i = 0
+            val size = this.animations.size
+            while (i < size) {
+                val currTotalDuration = this.animations[i].totalDuration
+                if (currTotalDuration == Animation.INFINITE) {
+                    totalDuration = Animation.INFINITE
+                    break
+                }
+                totalDuration = Math.max(currTotalDuration, totalDuration)
+                i++
+            }
+        }
+        this.totalDuration = totalDuration
+
+        // Fill in any missing start values and prepare the animations for evaluation.
+        var prevAnimation: Animation<*, V>? = null
+        var i = 0
+        val size = this.animations.size
+        while (i < size) {
+            val currAnimation = this.animations[i]
+            if (prevAnimation != null) {
+                currAnimation.setupStartValue(prevAnimation.getAnimatedValue(1f))
+            }
+            currAnimation.prepare(timeline.pixelsPerUnit)
+            prevAnimation = currAnimation
+            i++
+        }
+    }
+
+    companion object {
+        private val ANIMATION_COMPARATOR = Comparator<Animation<*, *>> { a1, a2 ->
+            // Animations with smaller start times are sorted first.
+            val s1 = a1.startDelay
+            val s2 = a2.startDelay
+            if (s1 != s2) {
+                return@Comparator if (s1 < s2) -1 else 1
+            }
+            val d1 = a1.totalDuration
+            val d2 = a2.totalDuration
+            if (d1 == Animation.INFINITE || d2 == Animation.INFINITE) {
+                // Infinite animations are sorted last.
+                return@Comparator if (d1 == d2) 0 else if (d1 == Animation.INFINITE) 1 else -1
+            }
+            // Animations with smaller end times are sorted first.
+            val e1 = s1 + d1
+            val e2 = s2 + d2
+
+            if (e1 < e2) -1 else if (e1 > e2) 1 else 0
+        }
+    }
+}
@@ -4,6 +4,7 @@ import android.animation.TimeInterpolator
 import android.graphics.Path
 import android.graphics.PointF
 import android.view.animation.LinearInterpolator
+import androidx.annotation.FloatRange
 import androidx.annotation.IntRange
 
 /**
@@ -62,6 +63,16 @@ class Animation<T, V> private constructor(
 
     private var isInitialized: Boolean = false
 
+    /**
+     * Returns true if this animation always returns the same value, regardless of the current
+     * animation fraction.
+     */
+    internal val isConstant: Boolean
+        get() = keyframeSet is ConstantKeyframeSet<*>
+
+    // True if the keyframe set's values can be returned without being transformed.
+    private val isIdentityTransformer = (transformer as Any) === IdentityValueTransformer
+
     /**
      * Gets the total duration of the animation in milliseconds, accounting for start delay and repeat
      * count. Returns [INFINITE] if the repeat count is infinite.
@@ -170,6 +181,18 @@ class Animation<T, V> private constructor(
         }
     }
 
+    /**
+     * Called once the animation's start value has been set up, so that the animation's keyframes
+     * can be prepared for evaluation.
+     *
+     * @param pixelsPerUnit An estimate of the number of pixels spanned by a single unit of the
+     * animated value when it is rendered.
+     */
+    internal fun prepare(pixelsPerUnit: Float) {
+        isInitialized = true
+        keyframeSet.prepare(pixelsPerUnit)
+    }
+
     private fun transformBack(value: V): T {
         if (transformer !is BidirectionalValueTransformer<*, *>) {
             throw IllegalArgumentException(
@@ -190,6 +213,28 @@ class Animation<T, V> private constructor(
         return transformer.transform(keyframeSet.getAnimatedValue(fraction))
     }
 
+    /**
+     * Same as [getAnimatedValue] except returns an unboxed float value. Must only be called on
+     * animations with a [Float] transformed value type.
+     */
+    internal fun getAnimatedFloatValue(fraction: Float): Float {
+        if (isIdentityTransformer) {
+            return keyframeSet.getAnimatedFloatValue(fraction)
+        }
+        return getAnimatedValue(fraction) as Float
+    }
+
+    /**
+     * Same as [getAnimatedValue] except returns an unboxed int value. Must only be called on
+     * animations with an [Int] transformed value type.
+     */
+    internal fun getAnimatedIntValue(fraction: Float): Int {
+        if (isIdentityTransformer) {
+            return keyframeSet.getAnimatedIntValue(fraction)
+        }
+        return getAnimatedValue(fraction) as Int
+    }
+
     /**
      * Creates a new animation with original value type `T` and a new transformed value
      * type `W`.
@@ -265,12 +310,12 @@ class Animation<T, V> private constructor(
         fun transformBack(value: V): T
     }
 
-    private class IdentityValueTransformer<V> : BidirectionalValueTransformer<V, V> {
-        override fun transform(value: V): V {
+    private object IdentityValueTransformer : BidirectionalValueTransformer<Any?, Any?> {
+        override fun transform(value: Any?): Any? {
             return value
         }
 
-        override fun transformBack(value: V): V {
+        override fun transformBack(value: Any?): Any? {
             return value
         }
     }
@@ -279,43 +324,6 @@ class Animation<T, V> private constructor(
         fun evaluate(fraction: Float, startValue: T, endValue: T): T
     }
 
-    private class FloatValueEvaluator : ValueEvaluator<Float> {
-        override fun evaluate(fraction: Float, startValue: Float, endValue: Float): Float {
-            return startValue + (endValue - startValue) * fraction
-        }
-    }
-
-    private class ArgbValueEvaluator : ValueEvaluator<Int> {
-        override fun evaluate(fraction: Float, startValue: Int, endValue: Int): Int {
-            val startA = (startValue shr 24 and 0xff) / 255f
-            var startR = (startValue shr 16 and 0xff) / 255f
-            var startG = (startValue shr 8 and 0xff) / 255f
-            var startB = (startValue and 0xff) / 255f
-            val endA = (endValue shr 24 and 0xff) / 255f
-            var endR = (endValue shr 16 and 0xff) / 255f
-            var endG = (endValue shr 8 and 0xff) / 255f
-            var endB = (endValue and 0xff) / 255f
-            // Transform from sRGB to linear.
-            startR = Math.pow(startR.toDouble(), 2.2).toFloat()
-            startG = Math.pow(startG.toDouble(), 2.2).toFloat()
-            startB = Math.pow(startB.toDouble(), 2.2).toFloat()
-            endR = Math.pow(endR.toDouble(), 2.2).toFloat()
-            endG = Math.pow(endG.toDouble(), 2.2).toFloat()
-            endB = Math.pow(endB.toDouble(), 2.2).toFloat()
-            // Compute the interpolated color in linear space.
-            var a = startA + fraction * (endA - startA)
-            var r = startR + fraction * (endR - startR)
-            var g = startG + fraction * (endG - startG)
-            var b = startB + fraction * (endB - startB)
-            // Transform back to sRGB in the [0..255] range.
-            a *= 255f
-            r = Math.pow(r.toDouble(), 1.0 / 2.2).toFloat() * 255f
-            g = Math.pow(g.toDouble(), 1.0 / 2.2).toFloat() * 255f
-            b = Math.pow(b.toDouble(), 1.0 / 2.2).toFloat() * 255f
-            return Math.round(a) shl 24 or (Math.round(r) shl 16) or (Math.round(g) shl 8) or Math.round(b)
-        }
-    }
-
     private class FloatArrayValueEvaluator : ValueEvaluator<FloatArray> {
         private var array: FloatArray? = null
 
@@ -332,18 +340,6 @@ class Animation<T, V> private constructor(
         }
     }
 
-    private class PathDataValueEvaluator : ValueEvaluator<PathData> {
-        private var pathData: PathData? = null
-
-        override fun evaluate(fraction: Float, startValue: PathData, endValue: PathData): PathData {
-            if (pathData == null || !pathData!!.canMorphWith(startValue)) {
-                pathData = PathData(startValue)
-            }
-            pathData!!.interpolate(startValue, endValue, fraction)
-            return pathData!!
-        }
-    }
-
     companion object {
 
         /**
@@ -359,7 +355,8 @@ class Animation<T, V> private constructor(
          */
         @JvmStatic
         fun ofFloat(vararg values: Float): Animation<Float, Float> {
-            return ofObject(FloatValueEvaluator(), floatArrayOf(*values).toTypedArray())
+            checkValues(values.size)
+            return Animation(KeyframeSet.ofFloat(values.toTypedArray()), identityValueTransformer())
         }
 
         /**
@@ -371,7 +368,8 @@ class Animation<T, V> private constructor(
         @JvmStatic
         @SafeVarargs
         fun ofFloat(vararg values: Keyframe<Float>): Animation<Float, Float> {
-            return ofObject(FloatValueEvaluator(), arrayOf(*values))
+            checkKeyframes(values.size)
+            return Animation(KeyframeSet.ofFloat(arrayOf(*values)), identityValueTransformer())
         }
 
         /**
@@ -387,7 +385,8 @@ class Animation<T, V> private constructor(
          */
         @JvmStatic
         fun ofArgb(vararg values: Int): Animation<Int, Int> {
-            return ofObject(ArgbValueEvaluator(), intArrayOf(*values).toTypedArray())
+            checkValues(values.size)
+            return Animation(KeyframeSet.ofArgb(values.toTypedArray()), identityValueTransformer())
         }
 
         /**
@@ -399,7 +398,36 @@ class Animation<T, V> private constructor(
         @SafeVarargs
         @JvmStatic
         fun ofArgb(vararg values: Keyframe<Int>): Animation<Int, Int> {
-            return ofObject(ArgbValueEvaluator(), arrayOf(*values))
+            checkKeyframes(values.size)
+            return Animation(KeyframeSet.ofArgb(arrayOf(*values)), identityValueTransformer())
+        }
+
+        /**
+         * Constructs and returns an [Animation] that animates from a start value to an end value
+         * along the trajectory of a damped spring. The spring's trajectory is computed once when
+         * the animation is created, and the animation's duration is set to the time it takes
+         * the spring to settle at its end value.
+         *
+         * @param startValue The value the spring starts at.
+         * @param endValue The value the spring comes to rest at.
+         * @param stiffness The stiffness of the spring. Stiffer springs settle faster.
+         * @param dampingRatio The damping ratio of the spring. Springs with a damping ratio less
+         * than 1 oscillate around the end value before settling, and the closer the damping ratio
+         * is to 0, the longer they oscillate.
+         * @param initialVelocity The initial velocity of the spring, in units per second.
+         * @return A new [Animation].
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun ofSpring(
+                startValue: Float,
+                endValue: Float,
+                @FloatRange(from = 0.0, fromInclusive = false) stiffness: Float = STIFFNESS_MEDIUM,
+                @FloatRange(from = 0.0, fromInclusive = false) dampingRatio: Float = DAMPING_RATIO_MEDIUM_BOUNCY,
+                initialVelocity: Float = 0f
+        ): Animation<Float, Float> {
+            val keyframeSet = SpringKeyframeSet(startValue, endValue, stiffness, dampingRatio, initialVelocity)
+            return Animation(keyframeSet, identityValueTransformer()).duration(keyframeSet.settleDuration)
         }
 
         /**
@@ -441,12 +469,14 @@ class Animation<T, V> private constructor(
          * distributed evenly across the duration of the animation).
          *
          * @param values A set of values that the animation will animate through over time.
-         * The [PathData] values should all be morphable with each other.
+         * [PathData] values that aren't morphable with each other are automatically converted
+         * into morphable forms when the [KyrieDrawable] is created.
          * @return A new [Animation].
          */
         @JvmStatic
         fun ofPathMorph(vararg values: PathData): Animation<PathData, PathData> {
-            return ofObject(PathDataValueEvaluator(), arrayOf(*values))
+            checkValues(values.size)
+            return Animation(KeyframeSet.ofPathMorph(arrayOf(*values)), identityValueTransformer())
         }
 
         /**
@@ -458,27 +488,51 @@ class Animation<T, V> private constructor(
         @JvmStatic
         @SafeVarargs
         fun ofPathMorph(vararg values: Keyframe<PathData>): Animation<PathData, PathData> {
-            return ofObject(PathDataValueEvaluator(), arrayOf(*values))
+            checkKeyframes(values.size)
+            return Animation(KeyframeSet.ofPathMorph(arrayOf(*values)), identityValueTransformer())
         }
 
         private fun <V> ofObject(evaluator: ValueEvaluator<V>, values: Array<V>): Animation<V, V> {
-            if (values.isEmpty()) {
+            checkValues(values.size)
+            return Animation(KeyframeSet.ofObject(evaluator, values), identityValueTransformer())
+        }
+
+        private fun <V> ofObject(evaluator: ValueEvaluator<V>, values: Array<Keyframe<V>>): Animation<V, V> {
+            checkKeyframes(values.size)
+            return Animation(KeyframeSet.ofObject(evaluator, values), identityValueTransformer())
+        }
+
+        private fun checkValues(numValues: Int) {
+            if (numValues == 0) {
                 throw IllegalArgumentException("Must specify at least one value")
             }
-            return Animation(KeyframeSet.ofObject(evaluator, values), IdentityValueTransformer())
         }
 
-        private fun <V> ofObject(evaluator: ValueEvaluator<V>, values: Array<Keyframe<V>>): Animation<V, V> {
-            if (values.isEmpty()) {
+        private fun checkKeyframes(numKeyframes: Int) {
+            if (numKeyframes == 0) {
                 throw IllegalArgumentException("Must specify at least one keyframe")
             }
-            return Animation(KeyframeSet.ofObject(evaluator, values), IdentityValueTransformer())
+        }
+
+        /**
+         * Constructs and returns an [Animation] that always returns the given value. Used to
+         * represent static property values without the overhead of a keyframe-based animation.
+         */
+        internal fun <V> ofConstant(value: V): Animation<V, V> {
+            return Animation(KeyframeSet.ofConstant(value), identityValueTransformer()).duration(0)
+        }
+
+        @Suppress("UNCHECKED_CAST")
+        private fun <V> identityValueTransformer(): BidirectionalValueTransformer<V, V> {
+            // The identity transformer is stateless, so a single instance can be shared.
+            return IdentityValueTransformer as BidirectionalValueTransformer<V, V>
         }
 
         /**
          * Constructs and returns an [Animation] that animates through [PointF] values in
          * order to simulate motion along the given path. Clients can use [transform] to transform
          * the returned animation into one that outputs floats corresponding to the path's x/y coordinates.
+         * The path is copied, so changes made to it afterwards don't affect the animation.
          *
          * @param path The path to animate values along.
          * @return A new [Animation].
@@ -488,7 +542,58 @@ class Animation<T, V> private constructor(
             if (path.isEmpty) {
                 throw IllegalArgumentException("The path must not be empty")
             }
-            return Animation(KeyframeSet.ofPath(path), IdentityValueTransformer())
+            return Animation(KeyframeSet.ofPath(path), identityValueTransformer())
+        }
+
+        /**
+         * Same as [ofPathMotion] except the path is specified as a [PathData] object. Path motion
+         * approximations are shared between animations along paths with the same content, so
+         * this variant should be preferred when many drawables animate along the same path.
+         *
+         * @param pathData The path to animate values along.
+         * @return A new [Animation].
+         */
+        @JvmStatic
+        fun ofPathMotion(pathData: PathData): Animation<PointF, PointF> {
+            if (pathData.numCommands == 0) {
+                throw IllegalArgumentException("The path must not be empty")
+            }
+            return Animation(KeyframeSet.ofPath(pathData), identityValueTransformer())
+        }
+
+        /**
+         * Constructs and returns an [Animation] that animates through the angles (in degrees) of
+         * the given path's tangent. When used to animate a rotation alongside an animation
+         * returned by [ofPathMotion] with the same path, duration, and interpolator, the object
+         * being moved stays oriented along the path. The path is copied and approximated
+         * separately for each animation, so the [PathData] variants should be used instead if
+         * both animations should share a single approximation of the path.
+         *
+         * @param path The path to animate angles along.
+         * @return A new [Animation].
+         */
+        @JvmStatic
+        fun ofPathRotation(path: Path): Animation<Float, Float> {
+            if (path.isEmpty) {
+                throw IllegalArgumentException("The path must not be empty")
+            }
+            return Animation(KeyframeSet.ofPathRotation(path), identityValueTransformer())
+        }
+
+        /**
+         * Same as [ofPathRotation] except the path is specified as a [PathData] object. When used
+         * alongside an animation returned by [ofPathMotion] with the same path, both animations
+         * are evaluated using a single shared approximation of the path.
+         *
+         * @param pathData The path to animate angles along.
+         * @return A new [Animation].
+         */
+        @JvmStatic
+        fun ofPathRotation(pathData: PathData): Animation<Float, Float> {
+            if (pathData.numCommands == 0) {
+                throw IllegalArgumentException("The path must not be empty")
+            }
+            return Animation(KeyframeSet.ofPathRotation(pathData), identityValueTransformer())
         }
 
         /**
@@ -496,5 +601,11 @@ class Animation<T, V> private constructor(
          * indefinitely. Also used to indicate infinite duration.
          */
         const val INFINITE = -1L
+
+        /** The default stiffness of a spring animation. */
+        const val STIFFNESS_MEDIUM = 1500f
+
+        /** The default damping ratio of a spring animation, which oscillates noticeably. */
+        const val DAMPING_RATIO_MEDIUM_BOUNCY = 0.5f
     }
 }
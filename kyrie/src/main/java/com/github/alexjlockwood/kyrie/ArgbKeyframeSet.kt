@@ -0,0 +1,119 @@
+package com.github.alexjlockwood.kyrie
+
+import androidx.annotation.ColorInt
+
+private const val GAMMA = 2.2
+private const val NUM_COMPONENTS = 4
+private const val A_OFFSET = 0
+private const val R_OFFSET = 1
+private const val G_OFFSET = 2
+private const val B_OFFSET = 3
+private const val NUM_LINEAR_BUCKETS = 4096
+
+/** Maps each 8-bit sRGB component value to its value in linear space. */
+private val SRGB_TO_LINEAR = FloatArray(256) { Math.pow(it / 255.0, GAMMA).toFloat() }
+
+/**
+ * The linear space values at which the rounded sRGB component value increases. A linear value
+ * maps to the 8-bit sRGB value `k` iff it lies in `[LINEAR_THRESHOLDS[k - 1], LINEAR_THRESHOLDS[k])`.
+ */
+private val LINEAR_THRESHOLDS = FloatArray(255) { Math.pow((it + 0.5) / 255.0, GAMMA).toFloat() }
+
+/**
+ * Divides the linear space range [0,1] into evenly sized buckets and maps each bucket to the
+ * smallest sRGB value contained in it, so that only a few thresholds need to be checked
+ * when converting a linear value back to sRGB.
+ */
+private val LINEAR_TO_SRGB_START = ShortArray(NUM_LINEAR_BUCKETS).also {
+    var k = 0
+    for (i in 0 until NUM_LINEAR_BUCKETS) {
+        val linear = i.toFloat() / NUM_LINEAR_BUCKETS
+        while (k < LINEAR_THRESHOLDS.size && LINEAR_THRESHOLDS[k] <= linear) {
+            k++
+        }
+        it[i] = k.toShort()
+    }
+}
+
+/**
+ * A [KeyframeSet] that animates between color values without boxing them. Colors are
+ * interpolated in linear space. Keyframe colors are converted to linear space once when the
+ * keyframe set is prepared, and interpolated colors are converted back to sRGB using lookup
+ * tables, so evaluating a color takes no calls to [Math.pow].
+ */
+internal class ArgbKeyframeSet(keyframes: List<Keyframe<Int>>) : ArrayKeyframeSet<Int>(keyframes) {
+
+    private lateinit var values: IntArray
+    private lateinit var linearValues: FloatArray
+
+    override fun onPrepare() {
+        val numKeyframes = keyframes.size
+        val values = IntArray(numKeyframes) { getKeyframeValue(it) }
+        val linearValues = FloatArray(numKeyframes * NUM_COMPONENTS)
+        for (i in 0 until numKeyframes) {
+            val color = values[i]
+            val base = i * NUM_COMPONENTS
+            linearValues[base + A_OFFSET] = (color ushr 24) / 255f
+            linearValues[base + R_OFFSET] = SRGB_TO_LINEAR[color shr 16 and 0xff]
+            linearValues[base + G_OFFSET] = SRGB_TO_LINEAR[color shr 8 and 0xff]
+            linearValues[base + B_OFFSET] = SRGB_TO_LINEAR[color and 0xff]
+        }
+        this.values = values
+        this.linearValues = linearValues
+    }
+
+    override fun getAnimatedValue(fraction: Float): Int {
+        return getAnimatedIntValue(fraction)
+    }
+
+    @ColorInt
+    override fun getAnimatedIntValue(fraction: Float): Int {
+        val i = locate(fraction)
+        if (i == 0) {
+            return values[0]
+        }
+        val f = intervalFraction
+        val linearValues = linearValues
+        val startBase = (i - 1) * NUM_COMPONENTS
+        val endBase = i * NUM_COMPONENTS
+        // Compute the interpolated color in linear space.
+        val a = lerp(linearValues[startBase + A_OFFSET], linearValues[endBase + A_OFFSET], f)
+        val r = lerp(linearValues[startBase + R_OFFSET], linearValues[endBase + R_OFFSET], f)
+        val g = lerp(linearValues[startBase + G_OFFSET], linearValues[endBase + G_OFFSET], f)
+        val b = lerp(linearValues[startBase + B_OFFSET], linearValues[endBase + B_OFFSET], f)
+        // Transform back to sRGB in the [0..255] range.
+        return (alphaToByte(a) shl 24) or (linearToSrgb(r) shl 16) or (linearToSrgb(g) shl 8) or linearToSrgb(b)
+    }
+}
+
+private fun lerp(a: Float, b: Float, t: Float): Float {
+    return a + (b - a) * t
+}
+
+/** Converts a linear alpha value to the [0..255] range, clamping values outside [0,1]. */
+private fun alphaToByte(alpha: Float): Int {
+    return when {
+        alpha <= 0f -> 0
+        alpha >= 1f -> 255
+        else -> Math.round(alpha * 255f)
+    }
+}
+
+/**
+ * Converts a linear component value to the [0..255] sRGB range, clamping values outside [0,1].
+ * Equivalent to `Math.round(Math.pow(linear, 1 / GAMMA) * 255)`.
+ */
+private fun linearToSrgb(linear: Float): Int {
+    if (linear <= 0f) {
+        return 0
+    }
+    if (linear >= 1f) {
+        return 255
+    }
+    var k = LINEAR_TO_SRGB_START[(linear * NUM_LINEAR_BUCKETS).toInt()].toInt()
+    val thresholds = LINEAR_THRESHOLDS
+    while (k < thresholds.size && thresholds[k] <= linear) {
+        k++
+    }
+    return k
+}
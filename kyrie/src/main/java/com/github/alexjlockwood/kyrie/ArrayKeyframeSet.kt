@@ -0,0 +1,150 @@
+package com.github.alexjlockwood.kyrie
+
+import android.animation.TimeInterpolator
+
+/**
+ * Abstract base [KeyframeSet] that copies its keyframe fractions and interpolators into flat
+ * arrays, so that the keyframe interval containing a given fraction can be located without
+ * touching any of the [Keyframe] objects (in constant time during normal playback, and in
+ * logarithmic time otherwise). Subclasses store their keyframe values in primitive
+ * arrays as well, which avoids boxing when animated values are computed.
+ *
+ * @param T The keyframe value type.
+ */
+internal abstract class ArrayKeyframeSet<T>(override val keyframes: List<Keyframe<T>>) : KeyframeSet<T>() {
+
+    private var isPrepared = false
+
+    /** The fraction of each keyframe. */
+    private lateinit var fractions: FloatArray
+
+    /** The interpolator of each keyframe (or null if the keyframe is linearly interpolated). */
+    private lateinit var interpolators: Array<TimeInterpolator?>
+
+    /**
+     * The fraction into the keyframe interval most recently located by [locate], after it has
+     * been interpolated by the interval's end keyframe's interpolator.
+     */
+    protected var intervalFraction: Float = 0f
+        private set
+
+    // The end index of the most recently located keyframe interval.
+    private var cursor = 1
+
+    /**
+     * Copies the keyframe fractions, interpolators, and values into flat arrays. Must be called
+     * after the animation's missing start values have been filled in.
+     */
+    override fun prepare(pixelsPerUnit: Float) {
+        if (isPrepared) {
+            return
+        }
+        val numKeyframes = keyframes.size
+        val fractions = FloatArray(numKeyframes)
+        val interpolators = arrayOfNulls<TimeInterpolator>(numKeyframes)
+        for (i in 0 until numKeyframes) {
+            val keyframe = keyframes[i]
+            fractions[i] = keyframe.fraction
+            interpolators[i] = BakedInterpolator.bake(keyframe.interpolator)
+        }
+        this.fractions = fractions
+        this.interpolators = interpolators
+        onPrepare()
+        isPrepared = true
+    }
+
+    /** Called by [prepare] so that subclasses can copy their keyframe values into flat arrays. */
+    protected abstract fun onPrepare()
+
+    /** @return The value of the keyframe at the given index, throwing if it hasn't been set. */
+    protected fun getKeyframeValue(index: Int): T {
+        return keyframes[index].value
+                ?: throw IllegalStateException("Keyframe at fraction ${keyframes[index].fraction} has no value")
+    }
+
+    /**
+     * Locates the keyframe interval containing the given fraction and updates [intervalFraction]
+     * accordingly. Fractions that fall outside the [0,1] bounds are extrapolated using the two
+     * keyframes at the appropriate end.
+     *
+     * @param fraction The elapsed fraction of the animation.
+     * @return The index of the keyframe at the end of the located interval, or 0 if this keyframe
+     * set only contains a single keyframe.
+     */
+    protected fun locate(fraction: Float): Int {
+        if (!isPrepared) {
+            prepare()
+        }
+        val fractions = fractions
+        val interpolators = interpolators
+        val numKeyframes = fractions.size
+        if (numKeyframes == 1) {
+            intervalFraction = 0f
+            return 0
+        }
+        // Special-case optimization for the common case of only two keyframes.
+        if (numKeyframes == 2) {
+            intervalFraction = interpolators[1]?.getInterpolation(fraction) ?: fraction
+            return 1
+        }
+        if (fraction <= 0) {
+            val f = interpolators[1]?.getInterpolation(fraction) ?: fraction
+            intervalFraction = (f - fractions[0]) / (fractions[1] - fractions[0])
+            return 1
+        }
+        val lastIndex = numKeyframes - 1
+        if (fraction >= 1) {
+            val f = interpolators[lastIndex]?.getInterpolation(fraction) ?: fraction
+            intervalFraction = (f - fractions[lastIndex - 1]) / (fractions[lastIndex] - fractions[lastIndex - 1])
+            return lastIndex
+        }
+        val i = findIntervalEndIndex(fraction)
+        if (i > 0) {
+            val f = (fraction - fractions[i - 1]) / (fractions[i] - fractions[i - 1])
+            // Apply the interpolator on the proportional duration.
+            intervalFraction = interpolators[i]?.getInterpolation(f) ?: f
+            return i
+        }
+        // Shouldn't get here.
+        intervalFraction = 1f
+        return lastIndex
+    }
+
+    /**
+     * Returns the index of the first keyframe whose fraction is greater than the given fraction,
+     * or -1 if no such keyframe exists. The interval found by the previous call is checked first
+     * (along with the interval immediately after it), so that evaluating the keyframe set during
+     * normal playback takes constant time. Otherwise the interval is found using a binary search.
+     */
+    private fun findIntervalEndIndex(fraction: Float): Int {
+        val fractions = fractions
+        val lastIndex = fractions.size - 1
+        if (fraction >= fractions[lastIndex]) {
+            return -1
+        }
+        val cursor = cursor
+        if (isInInterval(fraction, cursor)) {
+            return cursor
+        }
+        if (cursor < lastIndex && isInInterval(fraction, cursor + 1)) {
+            this.cursor = cursor + 1
+            return cursor + 1
+        }
+        var low = 1
+        var high = lastIndex
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (fraction < fractions[mid]) {
+                high = mid
+            } else {
+                low = mid + 1
+            }
+        }
+        this.cursor = low
+        return low
+    }
+
+    private fun isInInterval(fraction: Float, endIndex: Int): Boolean {
+        return fraction < fractions[endIndex] && (endIndex == 1 || fractions[endIndex - 1] <= fraction)
+    }
+}
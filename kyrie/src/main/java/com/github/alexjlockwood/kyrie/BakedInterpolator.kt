@@ -0,0 +1,90 @@
+package com.github.alexjlockwood.kyrie
+
+import android.animation.TimeInterpolator
+import android.view.animation.Interpolator
+import android.view.animation.LinearInterpolator
+import java.lang.ref.WeakReference
+import java.util.Arrays
+import java.util.LinkedHashMap
+import java.util.WeakHashMap
+
+private const val NUM_SAMPLES = 1025
+private const val MAX_CACHED_TABLES = 64
+
+/**
+ * An [Interpolator] that approximates another [TimeInterpolator] using a lookup table of evenly
+ * spaced samples and linear reconstruction between them. Expensive interpolators (i.e. path
+ * interpolators, which search an approximated path on every call) are baked once when a
+ * [KyrieDrawable] is created, so evaluating them each frame costs a single table lookup.
+ * Fractions outside the [0,1] bounds are passed through to the original interpolator.
+ */
+internal class BakedInterpolator private constructor(
+        private val interpolator: TimeInterpolator,
+        private val table: FloatArray
+) : Interpolator {
+
+    override fun getInterpolation(input: Float): Float {
+        if (input < 0f || input > 1f) {
+            return interpolator.getInterpolation(input)
+        }
+        val position = input * (NUM_SAMPLES - 1)
+        val index = position.toInt()
+        if (index >= NUM_SAMPLES - 1) {
+            return table[NUM_SAMPLES - 1]
+        }
+        val start = table[index]
+        return start + (table[index + 1] - start) * (position - index)
+    }
+
+    /** Wraps a lookup table so that tables can be interned by content. */
+    private class TableKey(val table: FloatArray) {
+        private val hashCode = Arrays.hashCode(table)
+
+        override fun equals(other: Any?): Boolean {
+            return other is TableKey && hashCode == other.hashCode && Arrays.equals(table, other.table)
+        }
+
+        override fun hashCode(): Int {
+            return hashCode
+        }
+    }
+
+    companion object {
+        // Maps each interpolator to its baked counterpart. The baked interpolator holds a strong
+        // reference to the original, so it is only weakly referenced here to avoid leaking either.
+        private val bakedInterpolators = WeakHashMap<TimeInterpolator, WeakReference<BakedInterpolator>>()
+
+        // The most recently baked tables, used to share a single table between interpolators that
+        // produce identical curves (i.e. path interpolators inflated from the same resource).
+        private val tables = object : LinkedHashMap<TableKey, FloatArray>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<TableKey, FloatArray>): Boolean {
+                return size > MAX_CACHED_TABLES
+            }
+        }
+
+        /**
+         * Returns a [BakedInterpolator] that approximates the given interpolator. Returns the given
+         * interpolator as is if it is null, linear, or has already been baked.
+         */
+        fun bake(interpolator: TimeInterpolator?): TimeInterpolator? {
+            if (interpolator == null || interpolator is LinearInterpolator || interpolator is BakedInterpolator) {
+                return interpolator
+            }
+            synchronized(bakedInterpolators) {
+                val cachedInterpolator = bakedInterpolators[interpolator]?.get()
+                if (cachedInterpolator != null) {
+                    return cachedInterpolator
+                }
+                val table = FloatArray(NUM_SAMPLES)
+                for (i in 0 until NUM_SAMPLES) {
+                    table[i] = interpolator.getInterpolation(i.toFloat() / (NUM_SAMPLES - 1))
+                }
+                val key = TableKey(table)
+                val internedTable = tables[key] ?: table.also { tables[key] = it }
+                val bakedInterpolator = BakedInterpolator(interpolator, internedTable)
+                bakedInterpolators[interpolator] = WeakReference(bakedInterpolator)
+                return bakedInterpolator
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.alexjlockwood.kyrie
 
+import android.graphics.Canvas
+import android.graphics.Paint
 import android.graphics.Path
 import android.graphics.RectF
 import androidx.annotation.FloatRange
@@ -30,6 +32,7 @@ class CircleNode private constructor(
         strokeDashOffset: List<Animation<*, Float>>,
         fillType: FillType,
         isStrokeScaling: Boolean,
+        isStrokeOutlineCached: Boolean,
         private val centerX: List<Animation<*, Float>>,
         private val centerY: List<Animation<*, Float>>,
         private val radius: List<Animation<*, Float>>
@@ -57,7 +60,8 @@ class CircleNode private constructor(
         strokeDashArray,
         strokeDashOffset,
         fillType,
-        isStrokeScaling
+        isStrokeScaling,
+        isStrokeOutlineCached
 ) {
 
     // <editor-fold desc="Layer">
@@ -67,19 +71,45 @@ class CircleNode private constructor(
     }
 
     internal class CircleLayer(timeline: PropertyTimeline, node: CircleNode) : RenderNode.RenderLayer(timeline, node) {
-        private val centerX = registerAnimatableProperty(node.centerX)
-        private val centerY = registerAnimatableProperty(node.centerY)
-        private val radius = registerAnimatableProperty(node.radius)
+        private val centerX = registerFloatProperty(node.centerX)
+        private val centerY = registerFloatProperty(node.centerY)
+        private val radius = registerFloatProperty(node.radius)
 
         private val tempRect = RectF()
 
         override fun onInitPath(outPath: Path) {
-            val cx = centerX.animatedValue
-            val cy = centerY.animatedValue
-            val r = radius.animatedValue
+            val cx = centerX.floatValue
+            val cy = centerY.floatValue
+            val r = radius.floatValue
             tempRect.set(cx - r, cy - r, cx + r, cy + r)
             outPath.addOval(tempRect, Path.Direction.CW)
         }
+
+        override fun getGeometryVersion(): Int {
+            return centerX.version + centerY.version + radius.version
+        }
+
+        override fun canTrimPathAnalytically(): Boolean {
+            return radius.floatValue > 0
+        }
+
+        override fun onAddTrimmedSegment(startFraction: Float, endFraction: Float, outPath: Path) {
+            // Path#addOval starts circles at 3 o'clock and proceeds clockwise, so the fractions
+            // of the circle's circumference map directly to angles.
+            val cx = centerX.floatValue
+            val cy = centerY.floatValue
+            val r = radius.floatValue
+            tempRect.set(cx - r, cy - r, cx + r, cy + r)
+            outPath.addArc(tempRect, startFraction * 360f, (endFraction - startFraction) * 360f)
+        }
+
+        override fun canDrawPrimitive(): Boolean {
+            return radius.floatValue > 0
+        }
+
+        override fun onDrawPrimitive(canvas: Canvas, paint: Paint) {
+            canvas.drawCircle(centerX.floatValue, centerY.floatValue, radius.floatValue, paint)
+        }
     }
 
     // </editor-fold>
@@ -169,6 +199,7 @@ class CircleNode private constructor(
                     strokeDashOffset,
                     fillType,
                     isScalingStroke,
+                    isStrokeOutlineCached,
                     centerX,
                     centerY,
                     radius
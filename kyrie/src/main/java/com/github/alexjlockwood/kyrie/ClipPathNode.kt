@@ -1,10 +1,13 @@
 package com.github.alexjlockwood.kyrie
 
+import android.annotation.TargetApi
 import android.graphics.Canvas
 import android.graphics.Matrix
 import android.graphics.Path
 import android.graphics.PointF
+import android.graphics.RectF
 import android.graphics.Region
+import android.os.Build
 
 /**
  * A [Node] that defines a region to be clipped. Note that a [ClipPathNode] only clips
@@ -30,17 +33,42 @@ class ClipPathNode private constructor(
     }
 
     internal class ClipPathLayer(timeline: PropertyTimeline, node: ClipPathNode) : TransformNode.TransformLayer(timeline, node) {
-        private val pathData = registerAnimatableProperty(node.pathData)
+        private val pathData = registerPathDataProperty(node.pathData)
         private val fillType = node.fillType
-        private val clipType = node.clipType
+        val clipType = node.clipType
 
         private val tempMatrix = Matrix()
         private val tempPath = Path()
-        private val tempRenderPath = Path()
+        private val pathWriter = PathDataUtils.PathWriter()
+
+        // The clip path transformed into device space, along with the state it was computed from.
+        val renderPath = Path()
+        private val renderMatrix = Matrix()
+        private var renderPathDataVersion = -1
+        private val renderRect = RectF()
+        private var isRenderPathRect = false
+
+        /**
+         * Set when the layer's clip is merged with the clips of its adjacent siblings by a
+         * [MergedClipPathLayer], in which case drawing the layer only updates its render path.
+         */
+        var isMerged = false
+
+        /** False if the layer doesn't currently clip anything (i.e. because it's scaled to 0). */
+        var isClipping = false
+            private set
+
+        /** Incremented each time the layer's [renderPath] or [isClipping] changes. */
+        var renderVersion = 0
+            private set
 
         override fun onDraw(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
             val matrixScale = getMatrixScale(parentMatrix)
             if (matrixScale == 0f) {
+                if (isClipping) {
+                    isClipping = false
+                    renderVersion++
+                }
                 return
             }
 
@@ -51,16 +79,28 @@ class ClipPathNode private constructor(
                 tempMatrix.postScale(scaleX, scaleY)
             }
 
-            tempRenderPath.reset()
-            tempPath.reset()
-            PathData.toPath(pathData.animatedValue, tempPath)
-            tempRenderPath.addPath(tempPath, tempMatrix)
-            tempRenderPath.fillType = getPaintFillType(fillType)
-            if (clipType == ClipType.INTERSECT) {
-                canvas.clipPath(tempRenderPath)
-            } else {
-                canvas.clipPath(tempRenderPath, Region.Op.DIFFERENCE)
+            updateRenderPath()
+            if (!isMerged) {
+                clip(canvas, renderPath, if (isRenderPathRect) renderRect else null, clipType)
+            }
+        }
+
+        /** Rebuilds the render path, unless the path and its transform haven't changed. */
+        private fun updateRenderPath() {
+            val pathDataVersion = pathData.version
+            if (isClipping && pathDataVersion == renderPathDataVersion && tempMatrix == renderMatrix) {
+                return
             }
+            tempPath.reset()
+            pathWriter.toPath(pathData.animatedValue, tempPath)
+            renderPath.reset()
+            renderPath.addPath(tempPath, tempMatrix)
+            renderPath.fillType = getPaintFillType(fillType)
+            isRenderPathRect = renderPath.isRect(renderRect) && isPixelAligned(renderRect)
+            renderMatrix.set(tempMatrix)
+            renderPathDataVersion = pathDataVersion
+            isClipping = true
+            renderVersion++
         }
 
         private fun getPaintFillType(fillType: FillType): Path.FillType {
@@ -79,6 +119,93 @@ class ClipPathNode private constructor(
         }
     }
 
+    /**
+     * Applies the clips of a run of adjacent [ClipPathLayer]s as a single clip. The clip is
+     * computed by combining the layers' render paths using [Path.op], and is only recomputed when
+     * one of the layers' render paths changes.
+     *
+     * Applying a series of intersecting and subtracting clips to a canvas is equivalent to
+     * intersecting the canvas' clip with the intersection of the intersecting clips minus the
+     * union of the subtracting clips, or to subtracting the union of the subtracting clips if
+     * there are no intersecting clips.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    internal class MergedClipPathLayer(private val layers: List<ClipPathLayer>) : Node.Layer {
+        private val renderVersions = IntArray(layers.size) { -1 }
+        private val mergedPath = Path()
+        private val mergedRect = RectF()
+        private var isMergedPathRect = false
+        private var mergedClipType = ClipType.INTERSECT
+        private var isClipping = false
+
+        init {
+            layers.forEach { it.isMerged = true }
+        }
+
+        override fun draw(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
+            onDraw(canvas, parentMatrix, viewportScale)
+        }
+
+        override fun onDraw(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
+            var isChanged = false
+            for (i in 0 until layers.size) {
+                val layer = layers[i]
+                layer.draw(canvas, parentMatrix, viewportScale)
+                if (renderVersions[i] != layer.renderVersion) {
+                    renderVersions[i] = layer.renderVersion
+                    isChanged = true
+                }
+            }
+            if (isChanged) {
+                updateMergedPath()
+            }
+            if (isClipping) {
+                clip(canvas, mergedPath, if (isMergedPathRect) mergedRect else null, mergedClipType)
+            }
+        }
+
+        private fun updateMergedPath() {
+            mergedPath.reset()
+            var hasIntersection = false
+            var hasDifference = false
+            // Intersect the intersecting clips.
+            for (layer in layers) {
+                if (layer.isClipping && layer.clipType == ClipType.INTERSECT) {
+                    if (hasIntersection) {
+                        mergedPath.op(layer.renderPath, Path.Op.INTERSECT)
+                    } else {
+                        mergedPath.set(layer.renderPath)
+                        hasIntersection = true
+                    }
+                }
+            }
+            // Then subtract (or unite, if there are no intersecting clips) the subtracting clips.
+            for (layer in layers) {
+                if (layer.isClipping && layer.clipType == ClipType.DIFFERENCE) {
+                    if (hasIntersection) {
+                        mergedPath.op(layer.renderPath, Path.Op.DIFFERENCE)
+                    } else if (hasDifference) {
+                        mergedPath.op(layer.renderPath, Path.Op.UNION)
+                    } else {
+                        mergedPath.set(layer.renderPath)
+                    }
+                    hasDifference = true
+                }
+            }
+            isClipping = hasIntersection || hasDifference
+            mergedClipType = if (hasIntersection) ClipType.INTERSECT else ClipType.DIFFERENCE
+            isMergedPathRect = mergedPath.isRect(mergedRect) && isPixelAligned(mergedRect)
+        }
+
+        override fun isStateful(): Boolean {
+            return false
+        }
+
+        override fun onStateChange(stateSet: IntArray): Boolean {
+            return false
+        }
+    }
+
     // </editor-fold>
 
     // <editor-fold desc="Builder">
@@ -152,5 +279,50 @@ class ClipPathNode private constructor(
         fun builder(): Builder {
             return Builder()
         }
+
+        /**
+         * Replaces each run of two or more adjacent [ClipPathLayer]s in the given list of sibling
+         * layers with a single [MergedClipPathLayer]. [Path.op] was added in KitKat, so clips
+         * are left alone on earlier versions.
+         */
+        internal fun mergeClipPathLayers(layers: MutableList<Node.Layer>) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+                return
+            }
+            var i = 0
+            while (i < layers.size) {
+                var end = i
+                while (end < layers.size && layers[end] is ClipPathLayer) {
+                    end++
+                }
+                if (end - i > 1) {
+                    val run = layers.subList(i, end)
+                    val mergedLayer = MergedClipPathLayer(run.map { it as ClipPathLayer })
+                    run.clear()
+                    layers.add(i, mergedLayer)
+                }
+                i++
+            }
+        }
+
+        /**
+         * Clip rectangles aren't antialiased (unlike clip paths), so only rectangles whose edges
+         * lie on pixel boundaries can be clipped using [Canvas.clipRect] without aliasing.
+         */
+        private fun isPixelAligned(rect: RectF): Boolean {
+            return rect.left == Math.round(rect.left).toFloat()
+                    && rect.top == Math.round(rect.top).toFloat()
+                    && rect.right == Math.round(rect.right).toFloat()
+                    && rect.bottom == Math.round(rect.bottom).toFloat()
+        }
+
+        private fun clip(canvas: Canvas, path: Path, rect: RectF?, clipType: ClipType) {
+            // Clipping to a pixel-aligned rectangle is much cheaper than clipping to a path.
+            if (clipType == ClipType.INTERSECT) {
+                if (rect != null) canvas.clipRect(rect) else canvas.clipPath(path)
+            } else {
+                if (rect != null) canvas.clipRect(rect, Region.Op.DIFFERENCE) else canvas.clipPath(path, Region.Op.DIFFERENCE)
+            }
+        }
     }
 }
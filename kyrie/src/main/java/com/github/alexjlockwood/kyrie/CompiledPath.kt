@@ -0,0 +1,122 @@
+package com.github.alexjlockwood.kyrie
+
+import android.graphics.Path
+
+private const val OP_MOVE_TO: Byte = 0
+private const val OP_LINE_TO: Byte = 1
+private const val OP_QUAD_TO: Byte = 2
+private const val OP_CUBIC_TO: Byte = 3
+private const val OP_CLOSE: Byte = 4
+private const val OP_R_LINE_TO: Byte = 5
+
+/**
+ * A [PathData] object compiled into a flat stream of absolute drawing operations. Relative
+ * coordinates, reflected control points, and arcs (which are converted to cubic Bezier curves)
+ * are all resolved when the path is compiled, so replaying a compiled path into a [Path] is a
+ * straight copy of its operations.
+ */
+internal class CompiledPath : PathSink {
+
+    private var ops = ByteArray(16)
+    private var numOps = 0
+
+    /** The coordinates of each operation, stored contiguously in the order they're replayed. */
+    var coords = FloatArray(64)
+        private set
+    var numCoords = 0
+        private set
+
+    /** Clears the compiled path so that it can be recompiled. */
+    fun reset() {
+        numOps = 0
+        numCoords = 0
+    }
+
+    /** Releases any unused capacity once the path has been compiled. */
+    fun trimToSize() {
+        ops = ops.copyOf(numOps)
+        coords = coords.copyOf(numCoords)
+    }
+
+    /** Replays the compiled path's operations into the given [Path]. */
+    fun replay(path: Path) {
+        val ops = ops
+        val c = coords
+        var j = 0
+        for (i in 0 until numOps) {
+            when (ops[i]) {
+                OP_MOVE_TO -> {
+                    path.moveTo(c[j], c[j + 1])
+                    j += 2
+                }
+                OP_LINE_TO -> {
+                    path.lineTo(c[j], c[j + 1])
+                    j += 2
+                }
+                OP_R_LINE_TO -> {
+                    path.rLineTo(c[j], c[j + 1])
+                    j += 2
+                }
+                OP_QUAD_TO -> {
+                    path.quadTo(c[j], c[j + 1], c[j + 2], c[j + 3])
+                    j += 4
+                }
+                OP_CUBIC_TO -> {
+                    path.cubicTo(c[j], c[j + 1], c[j + 2], c[j + 3], c[j + 4], c[j + 5])
+                    j += 6
+                }
+                OP_CLOSE -> path.close()
+            }
+        }
+    }
+
+    override fun moveTo(x: Float, y: Float) {
+        addOp(OP_MOVE_TO, 2)
+        coords[numCoords++] = x
+        coords[numCoords++] = y
+    }
+
+    override fun lineTo(x: Float, y: Float) {
+        addOp(OP_LINE_TO, 2)
+        coords[numCoords++] = x
+        coords[numCoords++] = y
+    }
+
+    override fun rLineTo(dx: Float, dy: Float) {
+        addOp(OP_R_LINE_TO, 2)
+        coords[numCoords++] = dx
+        coords[numCoords++] = dy
+    }
+
+    override fun quadTo(x1: Float, y1: Float, x2: Float, y2: Float) {
+        addOp(OP_QUAD_TO, 4)
+        coords[numCoords++] = x1
+        coords[numCoords++] = y1
+        coords[numCoords++] = x2
+        coords[numCoords++] = y2
+    }
+
+    override fun cubicTo(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float) {
+        addOp(OP_CUBIC_TO, 6)
+        coords[numCoords++] = x1
+        coords[numCoords++] = y1
+        coords[numCoords++] = x2
+        coords[numCoords++] = y2
+        coords[numCoords++] = x3
+        coords[numCoords++] = y3
+    }
+
+    override fun close() {
+        addOp(OP_CLOSE, 0)
+    }
+
+    private fun addOp(op: Byte, numOpCoords: Int) {
+        if (numOps == ops.size) {
+            ops = ops.copyOf(Math.max(numOps * 2, 16))
+        }
+        if (numCoords + numOpCoords > coords.size) {
+            coords = coords.copyOf(Math.max(coords.size * 2, 64))
+        }
+        ops[numOps++] = op
+    }
+}
@@ -0,0 +1,8 @@
+package com.github.alexjlockwood.kyrie
+
+/** A [FloatProperty] whose value never changes. */
+internal class ConstantFloatProperty(override val floatValue: Float) : FloatProperty {
+
+    override val version: Int
+        get() = 0
+}
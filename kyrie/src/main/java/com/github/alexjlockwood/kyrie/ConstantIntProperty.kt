@@ -0,0 +1,4 @@
+package com.github.alexjlockwood.kyrie
+
+/** An [IntProperty] whose value never changes. */
+internal class ConstantIntProperty(override val intValue: Int) : IntProperty
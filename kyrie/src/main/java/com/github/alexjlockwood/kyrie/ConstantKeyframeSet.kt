@@ -0,0 +1,16 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * A [KeyframeSet] that always returns the same value. Used to represent a [Node]'s static
+ * property values without allocating any [Keyframe]s.
+ *
+ * @param T The keyframe value type.
+ */
+internal class ConstantKeyframeSet<T>(private val value: T) : KeyframeSet<T>() {
+
+    override val keyframes: List<Keyframe<T>> = emptyList()
+
+    override fun getAnimatedValue(fraction: Float): T {
+        return value
+    }
+}
@@ -0,0 +1,13 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * A [Property] whose value never changes. Constant properties are never registered with the
+ * [PropertyTimeline], so they don't cost anything when the current play time changes.
+ *
+ * @param V The property's value type.
+ */
+internal class ConstantProperty<V>(override val animatedValue: V) : Property<V> {
+
+    override val version: Int
+        get() = 0
+}
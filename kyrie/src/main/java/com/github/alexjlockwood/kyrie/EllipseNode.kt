@@ -1,5 +1,7 @@
 package com.github.alexjlockwood.kyrie
 
+import android.graphics.Canvas
+import android.graphics.Paint
 import android.graphics.Path
 import android.graphics.RectF
 import androidx.annotation.FloatRange
@@ -30,6 +32,7 @@ class EllipseNode private constructor(
         strokeDashOffset: List<Animation<*, Float>>,
         fillType: FillType,
         isStrokeScaling: Boolean,
+        isStrokeOutlineCached: Boolean,
         private val centerX: List<Animation<*, Float>>,
         private val centerY: List<Animation<*, Float>>,
         private val radiusX: List<Animation<*, Float>>,
@@ -58,7 +61,8 @@ class EllipseNode private constructor(
         strokeDashArray,
         strokeDashOffset,
         fillType,
-        isStrokeScaling
+        isStrokeScaling,
+        isStrokeOutlineCached
 ) {
 
     // <editor-fold desc="Layer">
@@ -68,21 +72,53 @@ class EllipseNode private constructor(
     }
 
     internal class EllipseLayer(timeline: PropertyTimeline, node: EllipseNode) : RenderNode.RenderLayer(timeline, node) {
-        private val centerX = registerAnimatableProperty(node.centerX)
-        private val centerY = registerAnimatableProperty(node.centerY)
-        private val radiusX = registerAnimatableProperty(node.radiusX)
-        private val radiusY = registerAnimatableProperty(node.radiusY)
+        private val centerX = registerFloatProperty(node.centerX)
+        private val centerY = registerFloatProperty(node.centerY)
+        private val radiusX = registerFloatProperty(node.radiusX)
+        private val radiusY = registerFloatProperty(node.radiusY)
 
         private val tempRect = RectF()
 
         override fun onInitPath(outPath: Path) {
-            val cx = centerX.animatedValue
-            val cy = centerY.animatedValue
-            val rx = radiusX.animatedValue
-            val ry = radiusY.animatedValue
+            val cx = centerX.floatValue
+            val cy = centerY.floatValue
+            val rx = radiusX.floatValue
+            val ry = radiusY.floatValue
             tempRect.set(cx - rx, cy - ry, cx + rx, cy + ry)
             outPath.addOval(tempRect, Path.Direction.CW)
         }
+
+        override fun getGeometryVersion(): Int {
+            return centerX.version + centerY.version + radiusX.version + radiusY.version
+        }
+
+        override fun canTrimPathAnalytically(): Boolean {
+            // The perimeter of an ellipse doesn't have a closed form, so only circles are
+            // trimmed analytically.
+            val rx = radiusX.floatValue
+            return rx > 0 && rx == radiusY.floatValue
+        }
+
+        override fun onAddTrimmedSegment(startFraction: Float, endFraction: Float, outPath: Path) {
+            val cx = centerX.floatValue
+            val cy = centerY.floatValue
+            val r = radiusX.floatValue
+            tempRect.set(cx - r, cy - r, cx + r, cy + r)
+            outPath.addArc(tempRect, startFraction * 360f, (endFraction - startFraction) * 360f)
+        }
+
+        override fun canDrawPrimitive(): Boolean {
+            return radiusX.floatValue > 0 && radiusY.floatValue > 0
+        }
+
+        override fun onDrawPrimitive(canvas: Canvas, paint: Paint) {
+            val cx = centerX.floatValue
+            val cy = centerY.floatValue
+            val rx = radiusX.floatValue
+            val ry = radiusY.floatValue
+            tempRect.set(cx - rx, cy - ry, cx + rx, cy + ry)
+            canvas.drawOval(tempRect, paint)
+        }
     }
 
     // </editor-fold>
@@ -188,6 +224,7 @@ class EllipseNode private constructor(
                     strokeDashOffset,
                     fillType,
                     isScalingStroke,
+                    isStrokeOutlineCached,
                     centerX,
                     centerY,
                     radiusX,
@@ -76,6 +76,10 @@ inline fun GroupNode.Builder.rectangle(init: RectangleNode.Builder.() -> Unit):
 
 // Useful SVG path data extension functions.
 
+@JvmSynthetic
+inline fun pathData(init: PathData.Builder.() -> Unit): PathData =
+        PathData.builder().apply(init).build()
+
 @JvmSynthetic
 fun String.asPath() = PathData.toPath(this)
 
@@ -0,0 +1,24 @@
+package com.github.alexjlockwood.kyrie
+
+/** A [KeyframeSet] that animates between float values without boxing them. */
+internal class FloatKeyframeSet(keyframes: List<Keyframe<Float>>) : ArrayKeyframeSet<Float>(keyframes) {
+
+    private lateinit var values: FloatArray
+
+    override fun onPrepare() {
+        values = FloatArray(keyframes.size) { getKeyframeValue(it) }
+    }
+
+    override fun getAnimatedValue(fraction: Float): Float {
+        return getAnimatedFloatValue(fraction)
+    }
+
+    override fun getAnimatedFloatValue(fraction: Float): Float {
+        val i = locate(fraction)
+        if (i == 0) {
+            return values[0]
+        }
+        val startValue = values[i - 1]
+        return startValue + (values[i] - startValue) * intervalFraction
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * A float value read by a [Node.Layer] when it is drawn. Unlike a [Property] of type [Float],
+ * reading a [FloatProperty]'s value never boxes it.
+ */
+internal interface FloatProperty {
+
+    /** @return The value of this property at the timeline's current play time. */
+    val floatValue: Float
+
+    /**
+     * @return A number that changes each time this property's value changes, so that layers can
+     * detect changes without comparing values.
+     */
+    val version: Int
+}
@@ -1,8 +1,12 @@
 package com.github.alexjlockwood.kyrie
 
+import android.graphics.Bitmap
 import android.graphics.Canvas
+import android.graphics.Color
 import android.graphics.Matrix
+import android.graphics.Paint
 import android.graphics.PointF
+import androidx.annotation.FloatRange
 
 /** A [Node] that holds a group of children [Node]s. */
 class GroupNode private constructor(
@@ -13,6 +17,7 @@ class GroupNode private constructor(
         scaleY: List<Animation<*, Float>>,
         translateX: List<Animation<*, Float>>,
         translateY: List<Animation<*, Float>>,
+        private val alpha: List<Animation<*, Float>>,
         private val children: List<Node>
 ) : TransformNode(rotation, pivotX, pivotY, scaleX, scaleY, translateX, translateY) {
 
@@ -22,10 +27,26 @@ class GroupNode private constructor(
         return GroupLayer(timeline, this)
     }
 
-    internal class GroupLayer(timeline: PropertyTimeline, node: GroupNode) : TransformNode.TransformLayer(timeline, node) {
+    internal class GroupLayer(private val timeline: PropertyTimeline, node: GroupNode) : TransformNode.TransformLayer(timeline, node) {
+        private val alpha = registerFloatProperty(node.alpha)
         private val children: ArrayList<Layer>
 
+        // The range of timeline slots occupied by the properties of the group's descendants.
+        private val startSlot: Int
+        private val endSlot: Int
+
+        // The group's content is drawn to an offscreen bitmap while the group is translucent, and
+        // the bitmap is reused for as long as the content stays the same.
+        private var offscreenBitmap: Bitmap? = null
+        private var offscreenCanvas: Canvas? = null
+        private var offscreenPaint: Paint? = null
+        private var isOffscreenContentValid = false
+        private var offscreenContentVersion = 0
+        private val offscreenMatrix = Matrix()
+        private val offscreenViewportScale = PointF()
+
         init {
+            startSlot = timeline.numProperties
             val childrenNodes = node.children
             children = ArrayList(childrenNodes.size)
             var i = 0
@@ -34,14 +55,74 @@ class GroupNode private constructor(
                 children.add(childrenNodes[i].toLayer(timeline))
                 i++
             }
+            ClipPathNode.mergeClipPathLayers(children)
+            endSlot = timeline.numProperties
         }
 
         override fun onDraw(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
+            val alpha = this.alpha.floatValue
+            if (alpha >= 1f) {
+                releaseOffscreenBitmap()
+                drawChildren(canvas, parentMatrix, viewportScale)
+                return
+            }
+            if (alpha <= 0f) {
+                releaseOffscreenBitmap()
+                return
+            }
+            // Children can overlap, so they're drawn opaquely to an offscreen bitmap, which is
+            // then drawn translucently. The layers are drawn directly into the canvas' device
+            // space, so the bitmap has the same dimensions as the canvas.
+            val width = canvas.width
+            val height = canvas.height
+            var bitmap = offscreenBitmap
+            if (bitmap == null || bitmap.width != width || bitmap.height != height) {
+                releaseOffscreenBitmap()
+                bitmap = OffscreenBitmapPool.acquire(width, height)
+                offscreenBitmap = bitmap
+            }
+            val contentVersion = timeline.getLatestVersion(startSlot, endSlot)
+            if (!isOffscreenContentValid
+                    || offscreenContentVersion != contentVersion
+                    || offscreenMatrix != parentMatrix
+                    || !offscreenViewportScale.equals(viewportScale.x, viewportScale.y)) {
+                var offscreenCanvas = this.offscreenCanvas
+                if (offscreenCanvas == null) {
+                    offscreenCanvas = Canvas()
+                    this.offscreenCanvas = offscreenCanvas
+                }
+                offscreenCanvas.setBitmap(bitmap)
+                bitmap.eraseColor(Color.TRANSPARENT)
+                drawChildren(offscreenCanvas, parentMatrix, viewportScale)
+                isOffscreenContentValid = true
+                offscreenContentVersion = contentVersion
+                offscreenMatrix.set(parentMatrix)
+                offscreenViewportScale.set(viewportScale)
+            }
+            var paint = offscreenPaint
+            if (paint == null) {
+                paint = Paint()
+                paint.isFilterBitmap = true
+                offscreenPaint = paint
+            }
+            paint.alpha = Math.round(alpha * 255f)
+            canvas.drawBitmap(bitmap, 0f, 0f, paint)
+        }
+
+        private fun drawChildren(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
             canvas.save()
             children.forEach { it.draw(canvas, parentMatrix, viewportScale) }
             canvas.restore()
         }
 
+        private fun releaseOffscreenBitmap() {
+            val bitmap = offscreenBitmap ?: return
+            offscreenCanvas?.setBitmap(null)
+            OffscreenBitmapPool.release(bitmap)
+            offscreenBitmap = null
+            isOffscreenContentValid = false
+        }
+
         override fun isStateful(): Boolean {
             for (i in 0 until children.size) {
                 if (children[i].isStateful()) {
@@ -56,6 +137,10 @@ class GroupNode private constructor(
             for (i in 0 until children.size) {
                 changed = changed or children[i].onStateChange(stateSet)
             }
+            if (changed) {
+                // Children's colors aren't tracked by the timeline, so redraw their content.
+                isOffscreenContentValid = false
+            }
             return changed
         }
     }
@@ -70,8 +155,30 @@ class GroupNode private constructor(
     /** Builder class used to create [GroupNode]s. */
     @GroupNodeMarker
     class Builder internal constructor() : TransformNode.Builder<Builder>() {
+        private val alpha = asAnimations(1f)
         private val children = ArrayList<Node>()
 
+        // Alpha.
+
+        /**
+         * Sets the opacity of the group as a whole. Unlike the fill and stroke alphas of the
+         * group's children, overlapping children don't show through each other. Translucent groups
+         * are drawn to an offscreen bitmap, which is only redrawn when the group's content changes,
+         * so fading a group in or out is cheap.
+         */
+        fun alpha(@FloatRange(from = 0.0, to = 1.0) initialAlpha: Float): Builder {
+            return replaceFirstAnimation(alpha, asAnimation(initialAlpha))
+        }
+
+        @SafeVarargs
+        fun alpha(vararg animations: Animation<*, Float>): Builder {
+            return replaceAnimations(alpha, *animations)
+        }
+
+        fun alpha(animations: List<Animation<*, Float>>): Builder {
+            return replaceAnimations(alpha, animations)
+        }
+
         // Children.
 
         fun child(node: Node): Builder {
@@ -86,7 +193,7 @@ class GroupNode private constructor(
         override val self = this
 
         override fun build(): GroupNode {
-            return GroupNode(rotation, pivotX, pivotY, scaleX, scaleY, translateX, translateY, children)
+            return GroupNode(rotation, pivotX, pivotY, scaleX, scaleY, translateX, translateY, alpha, children)
         }
     }
 
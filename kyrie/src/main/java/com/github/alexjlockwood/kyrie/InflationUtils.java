@@ -765,7 +765,7 @@ final class InflationUtils {
       }
       anim.setValues(
           new MyPathMotionPropertyValuesHolder(
-              PathData.toPath(pathData), propertyXName, propertyYName));
+              PathData.parse(pathData), propertyXName, propertyYName));
     }
   }
 
@@ -993,9 +993,7 @@ final class InflationUtils {
       final String toString = styledAttributes.getString(valueToId);
       final PathData nodesFrom = PathData.parse(fromString == null ? "" : fromString);
       final PathData nodesTo = PathData.parse(toString == null ? "" : toString);
-      if (!nodesFrom.canMorphWith(nodesTo)) {
-        throw new InflateException("Can't morph from " + fromString + " to " + toString);
-      }
+      // Incompatible paths are normalized into morphable forms when the animation is prepared.
       return new MySimplePropertyValuesHolder(propertyName, nodesFrom, nodesTo, valueType);
     }
 
@@ -1342,13 +1340,13 @@ final class InflationUtils {
   }
 
   private static class MyPathMotionPropertyValuesHolder extends MyPropertyValuesHolder {
-    @NonNull private final Path path;
+    @NonNull private final PathData pathData;
     @Nullable private final String propertyNameX;
     @Nullable private final String propertyNameY;
 
     MyPathMotionPropertyValuesHolder(
-        Path path, @Nullable String propertyNameX, @Nullable String propertyNameY) {
-      this.path = path;
+        PathData pathData, @Nullable String propertyNameX, @Nullable String propertyNameY) {
+      this.pathData = pathData;
       this.propertyNameX = propertyNameX;
       this.propertyNameY = propertyNameY;
     }
@@ -1366,7 +1364,7 @@ final class InflationUtils {
         interpolator = new AccelerateDecelerateInterpolator();
       }
       final Animation<PointF, PointF> anim =
-          Animation.ofPathMotion(path)
+          Animation.ofPathMotion(pathData)
               .startDelay(startTime)
               .duration(endTime - startTime)
               .interpolator(interpolator == null ? DEFAULT_INTERPOLATOR : interpolator)
@@ -0,0 +1,11 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * An int value read by a [Node.Layer] when it is drawn. Unlike a [Property] of type [Int],
+ * reading an [IntProperty]'s value never boxes it.
+ */
+internal interface IntProperty {
+
+    /** @return The value of this property at the timeline's current play time. */
+    val intValue: Int
+}
@@ -30,11 +30,102 @@ internal abstract class KeyframeSet<T> {
      */
     abstract fun getAnimatedValue(fraction: Float): T
 
+    /**
+     * Same as [getAnimatedValue] except returns an unboxed float value. Keyframe sets that store
+     * their values in primitive arrays override this to avoid boxing the value on every frame.
+     */
+    open fun getAnimatedFloatValue(fraction: Float): Float {
+        return getAnimatedValue(fraction) as Float
+    }
+
+    /**
+     * Same as [getAnimatedValue] except returns an unboxed int value. Keyframe sets that store
+     * their values in primitive arrays override this to avoid boxing the value on every frame.
+     */
+    open fun getAnimatedIntValue(fraction: Float): Int {
+        return getAnimatedValue(fraction) as Int
+    }
+
+    /**
+     * Called once the animation's missing start values have been filled in, so that the keyframe
+     * set can precompute anything it needs in order to evaluate its values.
+     *
+     * @param pixelsPerUnit An estimate of the number of pixels spanned by a single unit of the
+     * animated value when it is rendered. Keyframe sets that approximate their values use this
+     * to choose an error tolerance that is invisible at the drawable's size.
+     */
+    open fun prepare(pixelsPerUnit: Float = 1f) {}
+
     companion object {
         private val KEYFRAME_COMPARATOR = Comparator<Keyframe<*>> { k1, k2 -> k1.fraction.compareTo(k2.fraction) }
 
+        /** @return A [FloatKeyframeSet] with evenly distributed keyframe values. */
+        fun ofFloat(values: Array<Float>): KeyframeSet<Float> {
+            return FloatKeyframeSet(toKeyframes(values))
+        }
+
+        /** @return A [FloatKeyframeSet] with the given keyframe values. */
+        fun ofFloat(values: Array<Keyframe<Float>>): KeyframeSet<Float> {
+            return FloatKeyframeSet(toSortedKeyframes(values))
+        }
+
+        /** @return An [ArgbKeyframeSet] with evenly distributed keyframe values. */
+        fun ofArgb(values: Array<Int>): KeyframeSet<Int> {
+            return ArgbKeyframeSet(toKeyframes(values))
+        }
+
+        /** @return An [ArgbKeyframeSet] with the given keyframe values. */
+        fun ofArgb(values: Array<Keyframe<Int>>): KeyframeSet<Int> {
+            return ArgbKeyframeSet(toSortedKeyframes(values))
+        }
+
+        /** @return A [PathDataKeyframeSet] with evenly distributed keyframe values. */
+        fun ofPathMorph(values: Array<PathData>): KeyframeSet<PathData> {
+            return PathDataKeyframeSet(toKeyframes(values))
+        }
+
+        /** @return A [PathDataKeyframeSet] with the given keyframe values. */
+        fun ofPathMorph(values: Array<Keyframe<PathData>>): KeyframeSet<PathData> {
+            return PathDataKeyframeSet(toSortedKeyframes(values))
+        }
+
         /** @return An [ObjectKeyframeSet] with evenly distributed keyframe values. */
         fun <T> ofObject(evaluator: ValueEvaluator<T>, values: Array<T>): KeyframeSet<T> {
+            return ObjectKeyframeSet(evaluator, toKeyframes(values))
+        }
+
+        /** @return An [ObjectKeyframeSet] with the given keyframe values. */
+        fun <T> ofObject(evaluator: ValueEvaluator<T>, values: Array<Keyframe<T>>): KeyframeSet<T> {
+            return ObjectKeyframeSet(evaluator, toSortedKeyframes(values))
+        }
+
+        /** @return A [ConstantKeyframeSet] that always returns the given value. */
+        fun <T> ofConstant(value: T): KeyframeSet<T> {
+            return ConstantKeyframeSet(value)
+        }
+
+        /** @return A [PathKeyframeSet] that estimates motion along the given path. */
+        fun ofPath(path: Path): KeyframeSet<PointF> {
+            return PathKeyframeSet(path)
+        }
+
+        /** @return A [PathKeyframeSet] that estimates motion along the given path. */
+        fun ofPath(pathData: PathData): KeyframeSet<PointF> {
+            return PathKeyframeSet(pathData)
+        }
+
+        /** @return A [PathRotationKeyframeSet] that estimates the tangent angles of the given path. */
+        fun ofPathRotation(path: Path): KeyframeSet<Float> {
+            return PathRotationKeyframeSet(PathKeyframeSet(path))
+        }
+
+        /** @return A [PathRotationKeyframeSet] that estimates the tangent angles of the given path. */
+        fun ofPathRotation(pathData: PathData): KeyframeSet<Float> {
+            return PathRotationKeyframeSet(PathKeyframeSet(pathData))
+        }
+
+        /** @return A list of keyframes with the given values distributed evenly between 0 and 1. */
+        private fun <T> toKeyframes(values: Array<T>): List<Keyframe<T>> {
             val numKeyframes = values.size
             val keyframes = ArrayList<Keyframe<T>>(Math.max(numKeyframes, 2))
             if (numKeyframes == 1) {
@@ -46,11 +137,11 @@ internal abstract class KeyframeSet<T> {
                     keyframes.add(Keyframe.of(i.toFloat() / (numKeyframes - 1), values[i]))
                 }
             }
-            return ObjectKeyframeSet(evaluator, keyframes)
+            return keyframes
         }
 
-        /** @return An [ObjectKeyframeSet] with the given keyframe values. */
-        fun <T> ofObject(evaluator: ValueEvaluator<T>, values: Array<Keyframe<T>>): KeyframeSet<T> {
+        /** @return The given keyframes sorted by fraction, keeping the last of any duplicates. */
+        private fun <T> toSortedKeyframes(values: Array<Keyframe<T>>): List<Keyframe<T>> {
             Arrays.sort(values, KEYFRAME_COMPARATOR)
             val list = ArrayList<Keyframe<T>>(values.size)
             val seenFractions = HashSet<Float>(values.size)
@@ -61,12 +152,7 @@ internal abstract class KeyframeSet<T> {
                 }
             }
             list.reverse()
-            return ObjectKeyframeSet(evaluator, list)
-        }
-
-        /** @return A [PathKeyframeSet] that estimates motion along the given path. */
-        fun ofPath(path: Path): KeyframeSet<PointF> {
-            return PathKeyframeSet(path)
+            return list
         }
     }
 }
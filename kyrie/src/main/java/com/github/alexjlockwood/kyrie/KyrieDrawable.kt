@@ -48,10 +48,11 @@ class KyrieDrawable private constructor(
         childrenNodes: List<Node>,
         private var tintList: ColorStateList?,
         private var tintMode: PorterDuff.Mode,
-        private var isAutoMirrored: Boolean
+        private var isAutoMirrored: Boolean,
+        @Px pathSimplificationTolerance: Float
 ) : Drawable(), Animatable {
 
-    private val alphaProperty: Property<Float>
+    private val alphaProperty: FloatProperty
 
     private val timeline: PropertyTimeline
     private val animator: KyrieValueAnimator
@@ -107,14 +108,17 @@ class KyrieDrawable private constructor(
 
     init {
         this.tintFilter = createTintFilter()
-        timeline = PropertyTimeline(this)
-        alphaProperty = timeline.registerAnimatableProperty(alphaAnimations)
+        val pixelsPerUnit = Math.max(width / viewportWidth, height / viewportHeight)
+        timeline = PropertyTimeline(this, pixelsPerUnit, pathSimplificationTolerance / pixelsPerUnit)
+        alphaProperty = timeline.registerFloatProperty(alphaAnimations)
         var i = 0
         val size = childrenNodes.size
         while (i < size) {
             childrenLayers.add(childrenNodes[i].toLayer(timeline))
             i++
         }
+        ClipPathNode.mergeClipPathLayers(childrenLayers)
+        timeline.compile()
         animator = KyrieValueAnimator(this)
     }
 
@@ -299,7 +303,7 @@ class KyrieDrawable private constructor(
 
         // Draw the offscreen bitmap.
         var paint: Paint? = null
-        val alphaFloat = this.alpha / 255f * alphaProperty.animatedValue
+        val alphaFloat = this.alpha / 255f * alphaProperty.floatValue
         val alphaInt = Math.round(alphaFloat * 255f)
         if (alphaInt < 0xff || cf != null) {
             if (offscreenPaint == null) {
@@ -526,6 +530,7 @@ class KyrieDrawable private constructor(
         private var isAutoMirrored: Boolean = false
         private var tintList: ColorStateList? = null
         private var tintMode = DEFAULT_TINT_MODE
+        private var pathSimplificationTolerance = 0f
 
         // Dimensions.
 
@@ -604,6 +609,27 @@ class KyrieDrawable private constructor(
             return this
         }
 
+        // Path simplification.
+
+        /**
+         * Simplifies the drawable's paths when the drawable is built, so that paths with more
+         * detail than can be seen at the drawable's size are cheaper to draw. Segments smaller
+         * than the tolerance are dropped, collinear line segments are merged, and runs of cubic
+         * Bezier curves are merged wherever the result stays within the tolerance. Only paths
+         * that aren't animated are simplified. Simplification is disabled by default.
+         *
+         * @param tolerance The maximum distance (in pixels, at the drawable's intrinsic size)
+         * that a simplified path may deviate from the original path, or 0 to disable
+         * simplification. Transforms applied by the path's parent groups are ignored.
+         */
+        fun pathSimplificationTolerance(@Px @FloatRange(from = 0.0) tolerance: Float): Builder {
+            if (tolerance < 0) {
+                throw IllegalArgumentException("Tolerance must be non-negative: $tolerance")
+            }
+            this.pathSimplificationTolerance = tolerance
+            return this
+        }
+
         // Children.
 
         fun child(node: Node): Builder {
@@ -642,7 +668,8 @@ class KyrieDrawable private constructor(
                     children,
                     tintList,
                     tintMode,
-                    isAutoMirrored
+                    isAutoMirrored,
+                    pathSimplificationTolerance
             )
         }
 
@@ -666,11 +693,19 @@ class KyrieDrawable private constructor(
         /**
          * Creates a [KyrieDrawable] from an existing [VectorDrawable]
          * or [AnimatedVectorDrawable] XML file.
+         *
+         * @param pathSimplificationTolerance The tolerance used to simplify the drawable's paths
+         * (see [Builder.pathSimplificationTolerance]), or 0 to leave them alone.
          */
         @JvmStatic
-        fun create(context: Context, @DrawableRes resId: Int): KyrieDrawable? {
+        @JvmOverloads
+        fun create(
+                context: Context,
+                @DrawableRes resId: Int,
+                @Px @FloatRange(from = 0.0) pathSimplificationTolerance: Float = 0f
+        ): KyrieDrawable? {
             return try {
-                val builder = builder()
+                val builder = builder().pathSimplificationTolerance(pathSimplificationTolerance)
                 InflationUtils.inflate(builder, context, resId)
                 builder.build()
             } catch (e: XmlPullParserException) {
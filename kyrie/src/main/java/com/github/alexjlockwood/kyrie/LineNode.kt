@@ -1,5 +1,7 @@
 package com.github.alexjlockwood.kyrie
 
+import android.graphics.Canvas
+import android.graphics.Paint
 import android.graphics.Path
 
 /** A [Node] that paints a line. */
@@ -28,6 +30,7 @@ class LineNode private constructor(
         strokeDashOffset: List<Animation<*, Float>>,
         fillType: FillType,
         isStrokeScaling: Boolean,
+        isStrokeOutlineCached: Boolean,
         private val startX: List<Animation<*, Float>>,
         private val startY: List<Animation<*, Float>>,
         private val endX: List<Animation<*, Float>>,
@@ -56,7 +59,8 @@ class LineNode private constructor(
         strokeDashArray,
         strokeDashOffset,
         fillType,
-        isStrokeScaling
+        isStrokeScaling,
+        isStrokeOutlineCached
 ) {
 
     // <editor-fold desc="Layer">
@@ -66,19 +70,48 @@ class LineNode private constructor(
     }
 
     internal class LineLayer(timeline: PropertyTimeline, node: LineNode) : RenderNode.RenderLayer(timeline, node) {
-        private val startX = registerAnimatableProperty(node.startX)
-        private val startY = registerAnimatableProperty(node.startY)
-        private val endX = registerAnimatableProperty(node.endX)
-        private val endY = registerAnimatableProperty(node.endY)
+        private val startX = registerFloatProperty(node.startX)
+        private val startY = registerFloatProperty(node.startY)
+        private val endX = registerFloatProperty(node.endX)
+        private val endY = registerFloatProperty(node.endY)
 
         override fun onInitPath(outPath: Path) {
-            val startX = this.startX.animatedValue
-            val startY = this.startY.animatedValue
-            val endX = this.endX.animatedValue
-            val endY = this.endY.animatedValue
+            val startX = this.startX.floatValue
+            val startY = this.startY.floatValue
+            val endX = this.endX.floatValue
+            val endY = this.endY.floatValue
             outPath.moveTo(startX, startY)
             outPath.lineTo(endX, endY)
         }
+
+        override fun getGeometryVersion(): Int {
+            return startX.version + startY.version + endX.version + endY.version
+        }
+
+        override fun canTrimPathAnalytically(): Boolean {
+            // PathMeasure doesn't trim zero-length lines to anything, so leave those to it.
+            return startX.floatValue != endX.floatValue || startY.floatValue != endY.floatValue
+        }
+
+        override fun onAddTrimmedSegment(startFraction: Float, endFraction: Float, outPath: Path) {
+            val startX = this.startX.floatValue
+            val startY = this.startY.floatValue
+            val dx = this.endX.floatValue - startX
+            val dy = this.endY.floatValue - startY
+            outPath.moveTo(startX + dx * startFraction, startY + dy * startFraction)
+            outPath.lineTo(startX + dx * endFraction, startY + dy * endFraction)
+        }
+
+        override fun canDrawPrimitive(): Boolean {
+            return true
+        }
+
+        override fun onDrawPrimitive(canvas: Canvas, paint: Paint) {
+            // Filling a line doesn't draw anything, whereas Canvas#drawLine always strokes.
+            if (paint.style == Paint.Style.STROKE) {
+                canvas.drawLine(startX.floatValue, startY.floatValue, endX.floatValue, endY.floatValue, paint)
+            }
+        }
     }
 
     // </editor-fold>
@@ -184,6 +217,7 @@ class LineNode private constructor(
                     strokeDashOffset,
                     fillType,
                     isScalingStroke,
+                    isStrokeOutlineCached,
                     startX,
                     startY,
                     endX,
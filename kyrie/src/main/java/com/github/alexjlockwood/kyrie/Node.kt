@@ -64,19 +64,19 @@ abstract class Node internal constructor() {
     internal companion object {
 
         internal fun asAnimation(initialValue: Float): Animation<*, Float> {
-            return Animation.ofFloat(initialValue, initialValue).duration(0)
+            return Animation.ofConstant(initialValue)
         }
 
         internal fun asAnimation(@ColorInt initialValue: Int): Animation<*, Int> {
-            return Animation.ofArgb(initialValue, initialValue).duration(0)
+            return Animation.ofConstant(initialValue)
         }
 
         internal fun asAnimation(initialValue: FloatArray): Animation<*, FloatArray> {
-            return Animation.ofFloatArray(initialValue, initialValue).duration(0)
+            return Animation.ofConstant(initialValue)
         }
 
         internal fun asAnimation(initialValue: PathData): Animation<*, PathData> {
-            return Animation.ofPathMorph(initialValue, initialValue).duration(0)
+            return Animation.ofConstant(initialValue)
         }
 
         internal fun asAnimations(initialValue: Float): MutableList<Animation<*, Float>> {
@@ -0,0 +1,51 @@
+package com.github.alexjlockwood.kyrie
+
+import android.graphics.Bitmap
+import java.util.ArrayList
+
+/** The maximum number of bytes held by pooled bitmaps (enough for two 1024x1024 bitmaps). */
+private const val MAX_POOLED_BYTES = 8 * 1024 * 1024
+
+/**
+ * A small pool of the offscreen bitmaps used to draw translucent groups. Groups only hold on to
+ * an offscreen bitmap while they're translucent, so releasing the bitmap back to the pool lets
+ * the next group that fades out reuse it instead of allocating a new one. The pool is bounded by
+ * the total size of its bitmaps, since each one can be as large as the canvas.
+ */
+internal object OffscreenBitmapPool {
+
+    private val bitmaps = ArrayList<Bitmap>()
+    private var pooledBytes = 0
+
+    /** @return A bitmap with the given dimensions. Its contents are undefined. */
+    fun acquire(width: Int, height: Int): Bitmap {
+        synchronized(bitmaps) {
+            for (i in bitmaps.size - 1 downTo 0) {
+                val bitmap = bitmaps[i]
+                if (bitmap.width == width && bitmap.height == height) {
+                    bitmaps.removeAt(i)
+                    pooledBytes -= bitmap.byteCount
+                    return bitmap
+                }
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+    }
+
+    /** Returns a bitmap to the pool. The bitmap must not be used after it has been released. */
+    fun release(bitmap: Bitmap) {
+        val byteCount = bitmap.byteCount
+        if (byteCount > MAX_POOLED_BYTES) {
+            // The bitmap is too large to pool, so it's left for the garbage collector.
+            return
+        }
+        synchronized(bitmaps) {
+            while (pooledBytes + byteCount > MAX_POOLED_BYTES) {
+                // Evict the least recently released bitmap.
+                pooledBytes -= bitmaps.removeAt(0).byteCount
+            }
+            bitmaps.add(bitmap)
+            pooledBytes += byteCount
+        }
+    }
+}
@@ -1,23 +1,153 @@
 package com.github.alexjlockwood.kyrie
 
 import android.graphics.Path
+import androidx.annotation.FloatRange
 
-import java.util.Arrays
-
-private val EMPTY_PATH_DATUMS = arrayOf<PathData.PathDatum>()
+private val EMPTY_COMMANDS = ByteArray(0)
+private val EMPTY_PARAM_OFFSETS = IntArray(1)
+private val EMPTY_PARAMS = FloatArray(0)
 
 /** A simple container class that represents an SVG path string. */
 class PathData {
 
-    internal val pathDatums: Array<PathDatum>
+    // The path's commands are stored in a packed form: the type of each command is stored
+    // as an ASCII byte (i.e. 'M' or 'c'), and the params of command i are stored in
+    // params[paramOffsets[i] until paramOffsets[i + 1]].
+    internal val commands: ByteArray
+    private val floatParamOffsets: IntArray?
+    private val floatParams: FloatArray?
+    // Compact paths store their params in quantized form instead (see compact()).
+    internal val quantizedParams: QuantizedParams?
 
     @JvmOverloads
-    internal constructor(pathDatums: Array<PathDatum> = EMPTY_PATH_DATUMS) {
-        this.pathDatums = pathDatums
+    internal constructor(
+            commands: ByteArray = EMPTY_COMMANDS,
+            paramOffsets: IntArray = EMPTY_PARAM_OFFSETS,
+            params: FloatArray = EMPTY_PARAMS
+    ) {
+        this.commands = commands
+        this.floatParamOffsets = paramOffsets
+        this.floatParams = params
+        this.quantizedParams = null
     }
 
     internal constructor(pathData: PathData) {
-        pathDatums = pathData.pathDatums.map { PathDatum(it) }.toTypedArray()
+        // The commands and param offsets are never modified, so they can be shared.
+        commands = pathData.commands
+        floatParamOffsets = pathData.paramOffsets
+        floatParams = pathData.params.copyOf()
+        quantizedParams = null
+    }
+
+    private constructor(commands: ByteArray, quantizedParams: QuantizedParams) {
+        this.commands = commands
+        this.floatParamOffsets = null
+        this.floatParams = null
+        this.quantizedParams = quantizedParams
+    }
+
+    /** The offsets of each command's params. Compact paths must be [expand]ed first. */
+    internal val paramOffsets: IntArray
+        get() = floatParamOffsets ?: throw IllegalStateException("Compact paths must be expanded first")
+
+    /** The params of each command. Compact paths must be [expand]ed first. */
+    internal val params: FloatArray
+        get() = floatParams ?: throw IllegalStateException("Compact paths must be expanded first")
+
+    // The path compiled into absolute drawing operations, which is created lazily the first time
+    // the path is drawn. Parsed paths may be shared between threads, but compiling the same
+    // path twice produces the same result, so racing to create it is harmless.
+    @Volatile
+    private var compiledPath: CompiledPath? = null
+    private var isCompiledPathDirty = false
+
+    /** @return The number of commands in this path. */
+    internal val numCommands: Int
+        get() = commands.size
+
+    /** @return The type of the command at the given index. */
+    internal fun getCommand(index: Int): Char {
+        return commands[index].toChar()
+    }
+
+    /** @return The offset of the first param of the command at the given index. */
+    internal fun getParamOffset(index: Int): Int {
+        val floatParamOffsets = floatParamOffsets
+        return if (floatParamOffsets != null) floatParamOffsets[index] else quantizedParams!!.getOffset(index)
+    }
+
+    /**
+     * @return This path, or a copy of this path that stores its params as floats if it is compact.
+     * Decoding every param of a compact path is expensive, so this should only be called when
+     * a path is prepared (i.e. before it is morphed), never while it is being drawn.
+     */
+    internal fun expand(): PathData {
+        val quantizedParams = quantizedParams ?: return this
+        return PathData(commands, quantizedParams.decodeOffsets(), quantizedParams.decodeParams())
+    }
+
+    /**
+     * @return This path compiled into absolute drawing operations. Compact paths aren't compiled
+     * (keeping their compiled paths would undo the memory savings), so [PathDataUtils] draws
+     * compact paths by decoding their commands one at a time instead.
+     */
+    internal fun getCompiledPath(): CompiledPath {
+        if (quantizedParams != null) {
+            throw IllegalStateException("Compact paths can't be compiled")
+        }
+        val compiledPath = compiledPath
+        if (compiledPath == null) {
+            val newCompiledPath = CompiledPath()
+            PathDataUtils.toPath(this, newCompiledPath)
+            newCompiledPath.trimToSize()
+            this.compiledPath = newCompiledPath
+            return newCompiledPath
+        }
+        if (isCompiledPathDirty) {
+            // Only paths that are modified in place (i.e. morphing paths, which are
+            // never shared) are recompiled, so the compiled path can be reused.
+            compiledPath.reset()
+            PathDataUtils.toPath(this, compiledPath)
+            isCompiledPathDirty = false
+        }
+        return compiledPath
+    }
+
+    /** Must be called after modifying this path's params in place. */
+    internal fun invalidateCompiledPath() {
+        isCompiledPathDirty = true
+    }
+
+    /**
+     * Returns a copy of this path that stores its params using a compact 16-bit fixed point
+     * encoding, which roughly halves the memory used by the path. The params are decoded each
+     * time the path is drawn, so compact paths are best suited for keeping large numbers of
+     * static icons in memory. The precision of each param is 1/65534th of the path's largest
+     * coordinate, so the loss of precision is invisible at typical icon sizes.
+     *
+     * @return A compact copy of this path, or this path if it is already compact or can't be
+     * encoded (i.e. because it has more than 65535 params).
+     */
+    fun compact(): PathData {
+        if (quantizedParams != null) {
+            return this
+        }
+        val quantizedParams = QuantizedParams.encode(paramOffsets, params) ?: return this
+        return PathData(commands, quantizedParams)
+    }
+
+    /**
+     * Returns a simplified copy of this path that deviates from it by no more than the given
+     * tolerance. Segments smaller than the tolerance are dropped, line segments that are
+     * collinear to within the tolerance are merged, and runs of cubic Bezier curves are merged
+     * into single curves wherever the merged curve stays within the tolerance. The simplified
+     * path is made up of absolute commands and generally won't be morphable with this path.
+     *
+     * @param tolerance The maximum deviation, in the same units as the path's coordinates.
+     * @return The simplified path, or this path if the tolerance is 0.
+     */
+    fun simplify(@FloatRange(from = 0.0) tolerance: Float): PathData {
+        return PathSimplifier.simplify(this, tolerance)
     }
 
     /**
@@ -31,60 +161,155 @@ class PathData {
         return PathDataUtils.canMorph(this, pathData)
     }
 
+    // <editor-fold desc="Builder">
+
+    @DslMarker
+    private annotation class PathDataMarker
+
     /**
-     * Interpolates this [PathData] object between two [PathData] objects by the given
-     * fraction.
-     *
-     * @param from The starting [PathData] object.
-     * @param to The ending [PathData] object.
-     * @param fraction The interpolation fraction.
-     * @throws IllegalArgumentException If the from or to [PathData] arguments aren't morphable
-     * with this [PathData] object.
+     * Builder class used to create [PathData] objects programmatically. Each function appends the
+     * corresponding SVG path command, which is written directly into the [PathData]'s storage,
+     * so no path string needs to be formatted or parsed. Functions prefixed with `r` take
+     * coordinates relative to the current point.
      */
-    internal fun interpolate(from: PathData, to: PathData, fraction: Float) {
-        if (!canMorphWith(from) || !canMorphWith(to)) {
-            throw IllegalArgumentException("Can't interpolate between two incompatible paths")
+    @PathDataMarker
+    class Builder internal constructor() {
+        private val buffer = PathDataUtils.PathDataBuffer()
+
+        /** Starts a new contour at the given point (SVG `M`). */
+        fun moveTo(x: Float, y: Float): Builder {
+            return add('M', x, y)
         }
-        for (i in from.pathDatums.indices) {
-            pathDatums[i].interpolate(from.pathDatums[i], to.pathDatums[i], fraction)
+
+        /** Starts a new contour offset from the current point (SVG `m`). */
+        fun rMoveTo(dx: Float, dy: Float): Builder {
+            return add('m', dx, dy)
         }
-    }
 
-    /** Each PathDatum object represents one command in the "d" attribute of an SVG pathData. */
-    internal class PathDatum {
+        /** Adds a line to the given point (SVG `L`). */
+        fun lineTo(x: Float, y: Float): Builder {
+            return add('L', x, y)
+        }
 
-        var type: Char = ' '
-        var params: FloatArray
+        /** Adds a line to a point offset from the current point (SVG `l`). */
+        fun rLineTo(dx: Float, dy: Float): Builder {
+            return add('l', dx, dy)
+        }
 
-        constructor(type: Char, params: FloatArray) {
-            this.type = type
-            this.params = params
+        /** Adds a quadratic Bezier curve (SVG `Q`). */
+        fun quadTo(x1: Float, y1: Float, x2: Float, y2: Float): Builder {
+            return add('Q', x1, y1, x2, y2)
         }
 
-        constructor(n: PathDatum) {
-            type = n.type
-            params = Arrays.copyOfRange(n.params, 0, n.params.size)
+        /** Adds a quadratic Bezier curve relative to the current point (SVG `q`). */
+        fun rQuadTo(dx1: Float, dy1: Float, dx2: Float, dy2: Float): Builder {
+            return add('q', dx1, dy1, dx2, dy2)
         }
 
-        /**
-         * The current PathDatum will be interpolated between the from and to values according to the
-         * current fraction.
-         *
-         * @param from The start value as a PathDatum.
-         * @param to The end value as a PathDatum
-         * @param fraction The fraction to interpolate.
-         */
-        fun interpolate(from: PathDatum, to: PathDatum, fraction: Float) {
-            for (i in from.params.indices) {
-                params[i] = from.params[i] * (1 - fraction) + to.params[i] * fraction
-            }
+        /** Adds a cubic Bezier curve (SVG `C`). */
+        fun cubicTo(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float): Builder {
+            return add('C', x1, y1, x2, y2, x3, y3)
+        }
+
+        /** Adds a cubic Bezier curve relative to the current point (SVG `c`). */
+        fun rCubicTo(dx1: Float, dy1: Float, dx2: Float, dy2: Float, dx3: Float, dy3: Float): Builder {
+            return add('c', dx1, dy1, dx2, dy2, dx3, dy3)
+        }
+
+        /** Adds an elliptical arc to the given point (SVG `A`). */
+        fun arcTo(
+                rx: Float,
+                ry: Float,
+                xAxisRotation: Float,
+                isLargeArc: Boolean,
+                isSweepPositive: Boolean,
+                x: Float,
+                y: Float
+        ): Builder {
+            addArc('A', rx, ry, xAxisRotation, isLargeArc, isSweepPositive)
+            return endCommand(x, y)
+        }
+
+        /** Adds an elliptical arc to a point offset from the current point (SVG `a`). */
+        fun rArcTo(
+                rx: Float,
+                ry: Float,
+                xAxisRotation: Float,
+                isLargeArc: Boolean,
+                isSweepPositive: Boolean,
+                dx: Float,
+                dy: Float
+        ): Builder {
+            addArc('a', rx, ry, xAxisRotation, isLargeArc, isSweepPositive)
+            return endCommand(dx, dy)
+        }
+
+        /** Closes the current contour (SVG `Z`). */
+        fun close(): Builder {
+            buffer.beginCommand('Z')
+            buffer.endCommand()
+            return this
+        }
+
+        // The helpers below write params without boxing them or allocating varargs arrays.
+
+        private fun add(cmd: Char, x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float): Builder {
+            buffer.beginCommand(cmd)
+            buffer.addParam(x1)
+            buffer.addParam(y1)
+            buffer.addParam(x2)
+            buffer.addParam(y2)
+            return endCommand(x3, y3)
+        }
+
+        private fun add(cmd: Char, x1: Float, y1: Float, x2: Float, y2: Float): Builder {
+            buffer.beginCommand(cmd)
+            buffer.addParam(x1)
+            buffer.addParam(y1)
+            return endCommand(x2, y2)
+        }
+
+        private fun add(cmd: Char, x: Float, y: Float): Builder {
+            buffer.beginCommand(cmd)
+            return endCommand(x, y)
+        }
+
+        /** Adds the last two params of the current command and ends it. */
+        private fun endCommand(x: Float, y: Float): Builder {
+            buffer.addParam(x)
+            buffer.addParam(y)
+            buffer.endCommand()
+            return this
+        }
+
+        private fun addArc(cmd: Char, rx: Float, ry: Float, xAxisRotation: Float, isLargeArc: Boolean, isSweepPositive: Boolean) {
+            buffer.beginCommand(cmd)
+            buffer.addParam(rx)
+            buffer.addParam(ry)
+            buffer.addParam(xAxisRotation)
+            buffer.addParam(if (isLargeArc) 1f else 0f)
+            buffer.addParam(if (isSweepPositive) 1f else 0f)
+        }
+
+        /** Constructs a [PathData] object from the commands added so far. */
+        fun build(): PathData {
+            return buffer.toPathData()
         }
     }
 
+    // </editor-fold>
+
     companion object {
 
+        @JvmStatic
+        fun builder(): Builder {
+            return Builder()
+        }
+
         /**
-         * Constructs a [PathData] object from the provided SVG path data string.
+         * Constructs a [PathData] object from the provided SVG path data string. Recently parsed
+         * path data strings are cached, so parsing the same string again returns the same
+         * (immutable) [PathData] object.
          *
          * @param pathData The SVG path data string to convert.
          * @return A [PathData] object represented by the provided SVG path data string.
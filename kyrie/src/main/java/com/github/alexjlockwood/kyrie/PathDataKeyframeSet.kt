@@ -0,0 +1,94 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * A [KeyframeSet] that morphs between [PathData] values. The keyframes are checked for
+ * compatibility once when the keyframe set is prepared (incompatible keyframes are converted
+ * into compatible forms using [PathMorphNormalizer]), and their parameters are copied into a
+ * single contiguous buffer, so that morphing between them each frame requires no further checks.
+ *
+ * Compiling a path is linear in its params for every command except arcs, so as long as the
+ * keyframes don't contain any arcs, their [CompiledPath]s are morphed directly and the
+ * animated path never needs to be recompiled.
+ */
+internal class PathDataKeyframeSet(keyframes: List<Keyframe<PathData>>) : ArrayKeyframeSet<PathData>(keyframes) {
+
+    private lateinit var values: List<PathData>
+    // The parameters of each keyframe's path, stored contiguously.
+    private lateinit var keyframeParams: FloatArray
+    private var numParams = 0
+    // The compiled coordinates of each keyframe's path, stored contiguously,
+    // or null if the keyframes' compiled paths can't be morphed directly.
+    private var keyframeCoords: FloatArray? = null
+    private var numCoords = 0
+    // The path that is written to when morphing between two keyframes.
+    private lateinit var animatedValue: PathData
+
+    override fun onPrepare() {
+        val values = List(keyframes.size) { getKeyframeValue(it) }
+        val isMorphable = (1 until values.size).all { values[0].canMorphWith(values[it]) }
+        // The original keyframe values are still returned when no morphing is necessary.
+        // Compact keyframes are expanded, since morphing needs direct access to their params.
+        val morphableValues = (if (isMorphable) values else PathMorphNormalizer.normalize(values)).map { it.expand() }
+        val firstValue = morphableValues[0]
+        val numParams = firstValue.params.size
+        val keyframeParams = FloatArray(numParams * values.size)
+        for (i in morphableValues.indices) {
+            System.arraycopy(morphableValues[i].params, 0, keyframeParams, i * numParams, numParams)
+        }
+        if (!hasArcs(firstValue)) {
+            val numCoords = firstValue.getCompiledPath().numCoords
+            val keyframeCoords = FloatArray(numCoords * values.size)
+            for (i in morphableValues.indices) {
+                System.arraycopy(morphableValues[i].getCompiledPath().coords, 0, keyframeCoords, i * numCoords, numCoords)
+            }
+            this.keyframeCoords = keyframeCoords
+            this.numCoords = numCoords
+        }
+        this.values = values
+        this.keyframeParams = keyframeParams
+        this.numParams = numParams
+        this.animatedValue = PathData(firstValue)
+    }
+
+    private fun hasArcs(pathData: PathData): Boolean {
+        return (0 until pathData.numCommands).any {
+            val command = pathData.getCommand(it)
+            command == 'a' || command == 'A'
+        }
+    }
+
+    override fun getAnimatedValue(fraction: Float): PathData {
+        val i = locate(fraction)
+        if (i == 0) {
+            return values[0]
+        }
+        val f = intervalFraction
+        // Return the keyframe values themselves when no morphing is necessary.
+        if (f == 0f) {
+            return values[i - 1]
+        }
+        if (f == 1f) {
+            return values[i]
+        }
+        val keyframeParams = keyframeParams
+        val params = animatedValue.params
+        val startOffset = (i - 1) * numParams
+        val endOffset = i * numParams
+        for (j in 0 until numParams) {
+            params[j] = keyframeParams[startOffset + j] * (1 - f) + keyframeParams[endOffset + j] * f
+        }
+        val keyframeCoords = keyframeCoords
+        if (keyframeCoords == null) {
+            animatedValue.invalidateCompiledPath()
+            return animatedValue
+        }
+        val coords = animatedValue.getCompiledPath().coords
+        val numCoords = numCoords
+        val startCoordsOffset = (i - 1) * numCoords
+        val endCoordsOffset = i * numCoords
+        for (j in 0 until numCoords) {
+            coords[j] = keyframeCoords[startCoordsOffset + j] * (1 - f) + keyframeCoords[endCoordsOffset + j] * f
+        }
+        return animatedValue
+    }
+}
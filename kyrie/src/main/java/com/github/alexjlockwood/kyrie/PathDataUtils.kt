@@ -2,14 +2,18 @@ package com.github.alexjlockwood.kyrie
 
 import android.graphics.Path
 import android.util.Log
-import java.util.ArrayList
 import java.util.Arrays
+import java.util.LinkedHashMap
 
 internal object PathDataUtils {
 
     private const val TAG = "PathDataUtils"
+    private const val MAX_CACHED_PATH_DATAS = 256
 
-    private val EMPTY_PARAMS = floatArrayOf()
+    // The largest integer n such that every integer in [0, n] is exactly representable as a float.
+    private const val MAX_EXACT_FLOAT_MANTISSA = 1 shl 24
+    // Powers of ten that are exactly representable as floats.
+    private val POWERS_OF_TEN = floatArrayOf(1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f)
 
     fun toPath(pathData: String?): Path {
         var pathData = pathData
@@ -28,57 +32,87 @@ internal object PathDataUtils {
         return path
     }
 
+    // The most recently parsed path strings. The same path strings tend to be parsed over and
+    // over again (i.e. each time a drawable is inflated), and parsed PathData objects are never
+    // modified, so they can be safely shared.
+    private val cache = object : LinkedHashMap<String, PathData>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, PathData>): Boolean {
+            return size > MAX_CACHED_PATH_DATAS
+        }
+    }
+
     fun parse(pathData: String?): PathData {
-        var pathData = pathData
-        if (pathData == null) {
-            pathData = ""
+        val key = pathData ?: ""
+        synchronized(cache) {
+            cache[key]?.let { return it }
         }
+        val result = parseInternal(key)
+        synchronized(cache) {
+            cache[key] = result
+        }
+        return result
+    }
+
+    private fun parseInternal(pathData: String): PathData {
         var start = 0
         var end = 1
-        val list = ArrayList<PathData.PathDatum>()
+        val buffer = PathDataBuffer()
         while (end < pathData.length) {
             end = nextStart(pathData, end)
-            val s = pathData.substring(start, end).trim { it <= ' ' }
-            if (s.isNotEmpty()) {
-                addNode(list, s[0], getFloats(s))
-            }
+            parseCommand(pathData, start, end, buffer)
             start = end
             end++
         }
         if (end - start == 1 && start < pathData.length) {
-            addNode(list, pathData[start], EMPTY_PARAMS)
+            buffer.beginCommand(pathData[start])
+            buffer.endCommand()
         }
-        return PathData(list.toTypedArray())
+        return buffer.toPathData()
     }
 
     fun canMorph(fromPathData: PathData?, toPathData: PathData?): Boolean {
         if (fromPathData == null || toPathData == null) {
             return false
         }
-        val from = fromPathData.pathDatums
-        val to = toPathData.pathDatums
-        if (from.size != to.size) {
+        // Both paths must have the same commands, each with the same number of params.
+        if (!Arrays.equals(fromPathData.commands, toPathData.commands)) {
             return false
         }
-        for (i in from.indices) {
-            if (from[i].type != to[i].type || from[i].params.size != to[i].params.size) {
-                return false
-            }
-        }
-        return true
+        return (0..fromPathData.numCommands).all { fromPathData.getParamOffset(it) == toPathData.getParamOffset(it) }
     }
 
+    /** Writes the given [PathData] into the given [Path]. Layers use a [PathWriter] instead. */
     fun toPath(pathData: PathData, path: Path) {
-        val nodes = pathData.pathDatums
+        if (pathData.quantizedParams == null) {
+            pathData.getCompiledPath().replay(path)
+            return
+        }
+        PathWriter().toPath(pathData, path)
+    }
+
+    /**
+     * Writes the given [PathData]'s commands to the given [PathSink] in absolute coordinates. This
+     * interprets each of the path's commands, so [toPath] should be preferred for drawing.
+     */
+    fun toPath(pathData: PathData, sink: PathSink) {
+        val quantizedParams = pathData.quantizedParams
+        if (quantizedParams != null) {
+            PathWriter().decode(pathData, quantizedParams, sink)
+            return
+        }
+        val paramOffsets = pathData.paramOffsets
+        val params = pathData.params
         val current = FloatArray(6)
         var previousCommand = 'm'
 
-        for (i in nodes.indices) {
-            addCommand(path, current, previousCommand, nodes[i].type, nodes[i].params)
-            previousCommand = nodes[i].type
+        for (i in 0 until pathData.numCommands) {
+            val command = pathData.getCommand(i)
+            addCommand(sink, current, previousCommand, command, params, paramOffsets[i], paramOffsets[i + 1])
+            previousCommand = command
         }
     }
 
+
     private fun nextStart(s: String, end: Int): Int {
         var end = end
         var c: Char
@@ -96,57 +130,154 @@ internal object PathDataUtils {
         return end
     }
 
-    private fun addNode(list: MutableList<PathData.PathDatum>, cmd: Char, value: FloatArray) {
-        list.add(PathData.PathDatum(cmd, value))
+    /**
+     * Writes [PathData] objects into [Path]s. Compact paths are decoded one command at a time
+     * each time they're written, so callers that write paths each frame should hold on to a
+     * single writer, which reuses its scratch buffers.
+     */
+    internal class PathWriter : PathSink {
+        private lateinit var path: Path
+        private val current = FloatArray(6)
+        private var params = FloatArray(8)
+
+        fun toPath(pathData: PathData, path: Path) {
+            val quantizedParams = pathData.quantizedParams
+            if (quantizedParams == null) {
+                pathData.getCompiledPath().replay(path)
+                return
+            }
+            this.path = path
+            decode(pathData, quantizedParams, this)
+        }
+
+        /** Same as [PathDataUtils.toPath] except decodes each command's params as they're needed. */
+        fun decode(pathData: PathData, quantizedParams: QuantizedParams, sink: PathSink) {
+            val current = current
+            Arrays.fill(current, 0f)
+            var previousCommand = 'm'
+
+            for (i in 0 until pathData.numCommands) {
+                val command = pathData.getCommand(i)
+                val start = quantizedParams.getOffset(i)
+                val end = quantizedParams.getOffset(i + 1)
+                if (end - start > params.size) {
+                    params = FloatArray(end - start)
+                }
+                quantizedParams.decode(start, end, params)
+                addCommand(sink, current, previousCommand, command, params, 0, end - start)
+                previousCommand = command
+            }
+        }
+
+        override fun moveTo(x: Float, y: Float) {
+            path.moveTo(x, y)
+        }
+
+        override fun lineTo(x: Float, y: Float) {
+            path.lineTo(x, y)
+        }
+
+        override fun rLineTo(dx: Float, dy: Float) {
+            path.rLineTo(dx, dy)
+        }
+
+        override fun quadTo(x1: Float, y1: Float, x2: Float, y2: Float) {
+            path.quadTo(x1, y1, x2, y2)
+        }
+
+        override fun cubicTo(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float) {
+            path.cubicTo(x1, y1, x2, y2, x3, y3)
+        }
+
+        override fun close() {
+            path.close()
+        }
     }
 
-    private class ExtractFloatResult internal constructor() {
-        // We need to return the position of the next separator and whether the
-        // next float starts with a '-' or a '.'.
-        internal var endPosition: Int = 0
-        internal var endWithNegOrDot: Boolean = false
+    /** Accumulates parsed commands into the packed arrays stored by a [PathData]. */
+    internal class PathDataBuffer {
+        private var commands = ByteArray(16)
+        private var paramOffsets = IntArray(17)
+        private var params = FloatArray(64)
+        private var numCommands = 0
+        private var numParams = 0
+
+        /** Begins a new command. Its params should be added before calling [endCommand]. */
+        fun beginCommand(cmd: Char) {
+            if (numCommands == commands.size) {
+                commands = commands.copyOf(numCommands * 2)
+                paramOffsets = paramOffsets.copyOf(numCommands * 2 + 1)
+            }
+            commands[numCommands] = cmd.toByte()
+        }
+
+        fun addParam(value: Float) {
+            if (numParams == params.size) {
+                params = params.copyOf(numParams * 2)
+            }
+            params[numParams++] = value
+        }
+
+        fun endCommand() {
+            numCommands++
+            paramOffsets[numCommands] = numParams
+        }
+
+        fun toPathData(): PathData {
+            return PathData(commands.copyOf(numCommands), paramOffsets.copyOf(numCommands + 1), params.copyOf(numParams))
+        }
     }
 
     /**
-     * Parse the floats in the string. This is an optimized version of parseFloat(s.split(",|\\s"));
-     *
-     * @param s the string containing a command and list of floats
-     * @return array of floats
+     * Parses the command in `s[start until end]` (ignoring any surrounding whitespace) and
+     * writes it to the given buffer.
      */
-    private fun getFloats(s: String): FloatArray {
-        if (s[0] == 'z' || s[0] == 'Z') {
-            return EMPTY_PARAMS
+    private fun parseCommand(s: String, start: Int, end: Int, buffer: PathDataBuffer) {
+        var first = start
+        var last = end
+        while (first < last && s[first] <= ' ') {
+            first++
         }
-        try {
-            val results = FloatArray(s.length)
-            var count = 0
-            var startPosition = 1
-            var endPosition: Int
-
-            val result = ExtractFloatResult()
-            val totalLength = s.length
-
-            // The startPosition should always be the first character of the
-            // current number, and endPosition is the character after the current
-            // number.
-            while (startPosition < totalLength) {
-                extract(s, startPosition, result)
-                endPosition = result.endPosition
-                if (startPosition < endPosition) {
-                    results[count++] = s.substring(startPosition, endPosition).toFloat()
-                }
-                startPosition = if (result.endWithNegOrDot) {
-                    // Keep the '-' or '.' sign with next number.
-                    endPosition
-                } else {
-                    endPosition + 1
-                }
+        while (last > first && s[last - 1] <= ' ') {
+            last--
+        }
+        if (first == last) {
+            return
+        }
+        val cmd = s[first]
+        buffer.beginCommand(cmd)
+        if (cmd != 'z' && cmd != 'Z') {
+            try {
+                parseFloats(s, first + 1, last, buffer)
+            } catch (e: NumberFormatException) {
+                throw RuntimeException("error in parsing \"${s.substring(first, last)}\"", e)
             }
-            return Arrays.copyOfRange(results, 0, count)
-        } catch (e: NumberFormatException) {
-            throw RuntimeException("error in parsing \"$s\"", e)
         }
+        buffer.endCommand()
+    }
 
+    /**
+     * Parses the floats in `s[start until end]` and writes them to the given buffer. This is an
+     * optimized version of parseFloat(s.split(",|\\s")).
+     */
+    private fun parseFloats(s: String, start: Int, end: Int, buffer: PathDataBuffer) {
+        // The startPosition should always be the first character of the
+        // current number, and endPosition is the character after the current
+        // number.
+        var startPosition = start
+        while (startPosition < end) {
+            val endPosition = extract(s, startPosition, end)
+            if (startPosition < endPosition) {
+                buffer.addParam(parseFloat(s, startPosition, endPosition))
+            }
+            val endsWithNegOrDot = endPosition < end && (s[endPosition] == '-' || s[endPosition] == '.')
+            startPosition = if (endsWithNegOrDot) {
+                // Keep the '-' or '.' sign with next number.
+                endPosition
+            } else {
+                endPosition + 1
+            }
+        }
     }
 
     /**
@@ -154,17 +285,17 @@ internal object PathDataUtils {
      *
      * @param s the string to search
      * @param start the position to start searching
-     * @param result the result of the extraction, including the position of the the starting position
-     * of next number, whether it is ending with a '-'.
+     * @param end the position to stop searching
+     * @return the position of the separator following the number that begins at the starting
+     * position. If the separator is a '-' or a '.', it belongs to the next number.
      */
-    private fun extract(s: String, start: Int, result: ExtractFloatResult) {
+    private fun extract(s: String, start: Int, end: Int): Int {
         // Now looking for ' ', ',', '.' or '-' from the start.
         var currentIndex = start
         var foundSeparator = false
-        result.endWithNegOrDot = false
         var secondDot = false
         var isExponential = false
-        while (currentIndex < s.length) {
+        while (currentIndex < end) {
             val isPrevExponential = isExponential
             isExponential = false
             when (s[currentIndex]) {
@@ -173,14 +304,12 @@ internal object PathDataUtils {
                     // The negative sign following a 'e' or 'E' is not a separator.
                     if (currentIndex != start && !isPrevExponential) {
                         foundSeparator = true
-                        result.endWithNegOrDot = true
                     }
                 '.' -> if (!secondDot) {
                     secondDot = true
                 } else {
                     // This is the second dot, and it is considered as a separator.
                     foundSeparator = true
-                    result.endWithNegOrDot = true
                 }
                 'e', 'E' -> isExponential = true
             }
@@ -191,10 +320,88 @@ internal object PathDataUtils {
         }
         // When there is nothing found, then we put the end position to the end
         // of the string.
-        result.endPosition = currentIndex
+        return currentIndex
     }
 
-    private fun addCommand(path: Path, current: FloatArray, prevCmd: Char, cmd: Char, value: FloatArray) {
+    /**
+     * Parses the float in `s[start until end]` without allocating. Numbers with at most 7
+     * significant digits and small exponents (i.e. nearly every number in a path string) are
+     * computed using a single correctly rounded float operation, which produces the same result
+     * as [java.lang.Float.parseFloat]. Anything else falls back to [java.lang.Float.parseFloat].
+     */
+    private fun parseFloat(s: String, start: Int, end: Int): Float {
+        var i = start
+        var last = end
+        // Float.parseFloat ignores surrounding whitespace.
+        while (i < last && s[i] <= ' ') {
+            i++
+        }
+        while (last > i && s[last - 1] <= ' ') {
+            last--
+        }
+        var isNegative = false
+        if (i < last && (s[i] == '-' || s[i] == '+')) {
+            isNegative = s[i] == '-'
+            i++
+        }
+        var mantissa = 0
+        var exponent = 0
+        var hasDigits = false
+        var isExact = true
+        while (i < last && s[i] in '0'..'9') {
+            mantissa = mantissa * 10 + (s[i] - '0')
+            isExact = isExact && mantissa <= MAX_EXACT_FLOAT_MANTISSA
+            hasDigits = true
+            i++
+        }
+        if (i < last && s[i] == '.') {
+            i++
+            while (i < last && s[i] in '0'..'9') {
+                mantissa = mantissa * 10 + (s[i] - '0')
+                isExact = isExact && mantissa <= MAX_EXACT_FLOAT_MANTISSA
+                exponent--
+                hasDigits = true
+                i++
+            }
+        }
+        if (hasDigits && i < last && (s[i] == 'e' || s[i] == 'E')) {
+            i++
+            var isExponentNegative = false
+            if (i < last && (s[i] == '-' || s[i] == '+')) {
+                isExponentNegative = s[i] == '-'
+                i++
+            }
+            var explicitExponent = 0
+            val exponentStart = i
+            while (i < last && s[i] in '0'..'9' && explicitExponent < POWERS_OF_TEN.size * 2) {
+                explicitExponent = explicitExponent * 10 + (s[i] - '0')
+                i++
+            }
+            isExact = isExact && i > exponentStart
+            exponent += if (isExponentNegative) -explicitExponent else explicitExponent
+        }
+        if (!hasDigits || !isExact || i != last) {
+            // Let Float.parseFloat handle (or reject) anything unusual.
+            return java.lang.Float.parseFloat(s.substring(start, end))
+        }
+        val value = when {
+            mantissa == 0 -> 0f
+            exponent >= 0 && exponent < POWERS_OF_TEN.size -> mantissa * POWERS_OF_TEN[exponent]
+            exponent < 0 && -exponent < POWERS_OF_TEN.size -> mantissa / POWERS_OF_TEN[-exponent]
+            else -> return java.lang.Float.parseFloat(s.substring(start, end))
+        }
+        return if (isNegative) -value else value
+    }
+
+    private fun addCommand(
+            path: PathSink,
+            current: FloatArray,
+            prevCmd: Char,
+            cmd: Char,
+            value: FloatArray,
+            start: Int,
+            end: Int
+    ) {
         var increment = 2
         var currentX = current[0]
         var currentY = current[1]
@@ -225,20 +432,20 @@ internal object PathDataUtils {
             'a', 'A' -> increment = 7
         }
 
-        var k = 0
-        while (k < value.size) {
+        var k = start
+        while (k < end) {
             when (cmd) {
                 // moveto - Start a new sub-pathData (relative)
                 'm' -> {
                     currentX += value[k]
                     currentY += value[k + 1]
-                    if (k > 0) {
+                    if (k > start) {
                         // According to the spec, if a moveto is followed by multiple
                         // pairs of coordinates, the subsequent pairs are treated as
                         // implicit lineto commands.
-                        path.rLineTo(value[k], value[k + 1])
+                        path.lineTo(currentX, currentY)
                     } else {
-                        path.rMoveTo(value[k], value[k + 1])
+                        path.moveTo(currentX, currentY)
                         currentSegmentStartX = currentX
                         currentSegmentStartY = currentY
                     }
@@ -247,7 +454,7 @@ internal object PathDataUtils {
                 'M' -> {
                     currentX = value[k]
                     currentY = value[k + 1]
-                    if (k > 0) {
+                    if (k > start) {
                         // According to the spec, if a moveto is followed by multiple
                         // pairs of coordinates, the subsequent pairs are treated as
                         // implicit lineto commands.
@@ -260,9 +467,9 @@ internal object PathDataUtils {
                 }
                 // lineto - Draw a line from the current point (relative)
                 'l' -> {
-                    path.rLineTo(value[k], value[k + 1])
                     currentX += value[k]
                     currentY += value[k + 1]
+                    path.lineTo(currentX, currentY)
                 }
                 // lineto - Draw a line from the current point
                 'L' -> {
@@ -272,8 +479,8 @@ internal object PathDataUtils {
                 }
                 // horizontal lineto - Draws a horizontal line (relative)
                 'h' -> {
-                    path.rLineTo(value[k], 0f)
                     currentX += value[k]
+                    path.lineTo(currentX, currentY)
                 }
                 // horizontal lineto - Draws a horizontal line
                 'H' -> {
@@ -282,8 +489,8 @@ internal object PathDataUtils {
                 }
                 // vertical lineto - Draws a vertical line from the current point (r)
                 'v' -> {
-                    path.rLineTo(0f, value[k])
                     currentY += value[k]
+                    path.lineTo(currentX, currentY)
                 }
                 // vertical lineto - Draws a vertical line from the current point
                 'V' -> {
@@ -292,7 +499,13 @@ internal object PathDataUtils {
                 }
                 // curveto - Draws a cubic Bezier curve (relative)
                 'c' -> {
-                    path.rCubicTo(value[k], value[k + 1], value[k + 2], value[k + 3], value[k + 4], value[k + 5])
+                    path.cubicTo(
+                            currentX + value[k],
+                            currentY + value[k + 1],
+                            currentX + value[k + 2],
+                            currentY + value[k + 3],
+                            currentX + value[k + 4],
+                            currentY + value[k + 5])
 
                     ctrlPointX = currentX + value[k + 2]
                     ctrlPointY = currentY + value[k + 3]
@@ -315,13 +528,13 @@ internal object PathDataUtils {
                         reflectiveCtrlPointX = currentX - ctrlPointX
                         reflectiveCtrlPointY = currentY - ctrlPointY
                     }
-                    path.rCubicTo(
-                            reflectiveCtrlPointX,
-                            reflectiveCtrlPointY,
-                            value[k],
-                            value[k + 1],
-                            value[k + 2],
-                            value[k + 3])
+                    path.cubicTo(
+                            currentX + reflectiveCtrlPointX,
+                            currentY + reflectiveCtrlPointY,
+                            currentX + value[k],
+                            currentY + value[k + 1],
+                            currentX + value[k + 2],
+                            currentY + value[k + 3])
 
                     ctrlPointX = currentX + value[k]
                     ctrlPointY = currentY + value[k + 1]
@@ -350,7 +563,7 @@ internal object PathDataUtils {
                 }
                 // Draws a quadratic Bezier (relative)
                 'q' -> {
-                    path.rQuadTo(value[k], value[k + 1], value[k + 2], value[k + 3])
+                    path.quadTo(currentX + value[k], currentY + value[k + 1], currentX + value[k + 2], currentY + value[k + 3])
                     ctrlPointX = currentX + value[k]
                     ctrlPointY = currentY + value[k + 1]
                     currentX += value[k + 2]
@@ -372,7 +585,11 @@ internal object PathDataUtils {
                         reflectiveCtrlPointX = currentX - ctrlPointX
                         reflectiveCtrlPointY = currentY - ctrlPointY
                     }
-                    path.rQuadTo(reflectiveCtrlPointX, reflectiveCtrlPointY, value[k], value[k + 1])
+                    path.quadTo(
+                            currentX + reflectiveCtrlPointX,
+                            currentY + reflectiveCtrlPointY,
+                            currentX + value[k],
+                            currentY + value[k + 1])
                     ctrlPointX = currentX + reflectiveCtrlPointX
                     ctrlPointY = currentY + reflectiveCtrlPointY
                     currentX += value[k]
@@ -442,7 +659,7 @@ internal object PathDataUtils {
     }
 
     private fun drawArc(
-            p: Path,
+            p: PathSink,
             x0: Float,
             y0: Float,
             x1: Float,
@@ -533,7 +750,7 @@ internal object PathDataUtils {
      * @param sweep The angle (positive or negative) of the sweep of the arc on the ellipse
      */
     private fun arcToBezier(
-            p: Path,
+            p: PathSink,
             cx: Double,
             cy: Double,
             a: Double,
@@ -3,90 +3,199 @@ package com.github.alexjlockwood.kyrie
 import android.graphics.Path
 import android.graphics.PathMeasure
 import android.graphics.PointF
+import android.graphics.RectF
 import android.os.Build
 import androidx.annotation.FloatRange
 import androidx.annotation.Size
+import java.util.Arrays
+import java.util.LinkedHashMap
 
-private const val MAX_NUM_POINTS = 100
 private const val FRACTION_OFFSET = 0
 private const val X_OFFSET = 1
 private const val Y_OFFSET = 2
-private const val NUM_COMPONENTS = 3
+private const val ANGLE_OFFSET = 3
+private const val NUM_COMPONENTS = 4
+// The number of components per point returned by Path.approximate.
+private const val NUM_APPROXIMATED_COMPONENTS = 3
+
+/** The maximum error between the approximation and the curve, in pixels. */
+private const val MAX_PIXEL_ERROR = 0.5f
+/**
+ * The maximum error between the approximation and the curve, relative to the path's size. Only
+ * used when the keyframe set is evaluated before it has been prepared for a known scale.
+ */
+private const val MAX_RELATIVE_ERROR = 1f / 1024
+private const val MAX_CACHED_APPROXIMATIONS = 32
+
+/** The number of evenly sized segments each contour is divided into before being refined. */
+private const val NUM_INITIAL_SEGMENTS = 16
+/** The maximum number of times each initial segment can be halved. */
+private const val MAX_SUBDIVISION_DEPTH = 8
 
 /**
  * PathKeyframeSet relies on approximating the Path as a series of line segments. The line segments
- * are recursively divided until there is less than 1/2 pixel error between the lines and the curve.
- * Each point of the line segment is converted to a [Keyframe] and a linear interpolation
- * between keyframes creates a good approximation of the curve.
+ * are recursively divided until the error between the lines and the curve is small enough to be
+ * invisible when the drawable is rendered. Each point of the line segment is converted to a
+ * [Keyframe] and a linear interpolation between keyframes creates a good approximation of the curve.
+ *
+ * Approximations of [PathData] are shared between keyframe sets with the same content, so many
+ * drawables animating along the same path only approximate it once. Each point also stores the
+ * path's tangent angle, so that [PathRotationKeyframeSet] can orient objects along the path using
+ * the same table.
  */
-internal class PathKeyframeSet(path: Path) : KeyframeSet<PointF>() {
+internal class PathKeyframeSet private constructor(
+        private val path: Path,
+        // Identifies the path's content in the approximation cache, or null if it can't be shared.
+        private val cacheKey: Any?
+) : KeyframeSet<PointF>() {
 
     private val tempPointF = PointF()
-    private val keyframeData: FloatArray
+    private lateinit var keyframeData: FloatArray
+    // The fraction between the two most recently located points.
+    private var intervalFraction = 0f
+    private var tolerance = Float.POSITIVE_INFINITY
 
     override val keyframes: List<Keyframe<PointF>> = emptyList()
 
+    // The path is copied since it may be mutated before it is approximated. Paths don't define
+    // content equality, so their approximations aren't shared.
+    constructor(path: Path) : this(Path(path), null)
+
+    constructor(pathData: PathData) : this(PathData.toPath(pathData), PathDataKey(pathData))
+
     init {
         if (path.isEmpty) {
             throw IllegalArgumentException("The path must not be empty")
         }
-        keyframeData = approximate(path, 0.5f)
+    }
+
+    /**
+     * Approximates the path using an error tolerance that is invisible at the given scale. If the
+     * keyframe set is prepared more than once, the finest approximation is kept.
+     */
+    override fun prepare(pixelsPerUnit: Float) {
+        prepareWithTolerance(if (pixelsPerUnit > 0) MAX_PIXEL_ERROR / pixelsPerUnit else getRelativeTolerance())
+    }
+
+    /**
+     * @return A tolerance relative to the path's own size, used when the keyframe set is
+     * evaluated without having been prepared and so the scale it is rendered at is unknown.
+     */
+    private fun getRelativeTolerance(): Float {
+        val bounds = RectF()
+        path.computeBounds(bounds, true)
+        val size = Math.max(bounds.width(), bounds.height())
+        return if (size > 0) Math.min(MAX_PIXEL_ERROR, size * MAX_RELATIVE_ERROR) else MAX_PIXEL_ERROR
+    }
+
+    private fun prepareWithTolerance(tolerance: Float) {
+        // Round down to a power of two so that drawables rendered at similar
+        // sizes can share the same approximation.
+        val roundedTolerance = Math.pow(2.0, Math.floor(Math.log(tolerance.toDouble()) / Math.log(2.0))).toFloat()
+        if (roundedTolerance < this.tolerance) {
+            keyframeData = getApproximation(roundedTolerance)
+            this.tolerance = roundedTolerance
+        }
+    }
+
+    private fun getApproximation(tolerance: Float): FloatArray {
+        val cacheKey = cacheKey ?: return withTangentAngles(approximate(path, tolerance))
+        val key = ApproximationKey(cacheKey, tolerance)
+        synchronized(approximations) {
+            approximations[key]?.let { return it }
+        }
+        val approximation = withTangentAngles(approximate(path, tolerance))
+        synchronized(approximations) {
+            approximations[key] = approximation
+        }
+        return approximation
     }
 
     override fun getAnimatedValue(fraction: Float): PointF {
+        val i = locate(fraction)
+        val startBase = i * NUM_COMPONENTS
+        val endBase = startBase + NUM_COMPONENTS
+        val x = lerp(keyframeData[startBase + X_OFFSET], keyframeData[endBase + X_OFFSET], intervalFraction)
+        val y = lerp(keyframeData[startBase + Y_OFFSET], keyframeData[endBase + Y_OFFSET], intervalFraction)
+        tempPointF.set(x, y)
+        return tempPointF
+    }
+
+    /**
+     * Same as [getAnimatedValue] except returns the angle of the path's tangent (in degrees)
+     * instead of its position.
+     */
+    fun getAnimatedAngle(fraction: Float): Float {
+        val i = locate(fraction)
+        val startBase = i * NUM_COMPONENTS
+        val endBase = startBase + NUM_COMPONENTS
+        return lerp(keyframeData[startBase + ANGLE_OFFSET], keyframeData[endBase + ANGLE_OFFSET], intervalFraction)
+    }
+
+    /**
+     * Locates the approximated points surrounding the given fraction and updates
+     * [intervalFraction] accordingly. Fractions that fall outside the [0,1] bounds are
+     * extrapolated using the two points at the appropriate end.
+     *
+     * @return The index of the point at the start of the located interval.
+     */
+    private fun locate(fraction: Float): Int {
+        if (tolerance == Float.POSITIVE_INFINITY) {
+            prepareWithTolerance(getRelativeTolerance())
+        }
+        val keyframeData = keyframeData
         val numPoints = keyframeData.size / NUM_COMPONENTS
-        if (fraction < 0) {
-            return interpolateInRange(fraction, 0, 1)
-        }
-        if (fraction > 1) {
-            return interpolateInRange(fraction, numPoints - 2, numPoints - 1)
-        }
-        if (fraction == 0f) {
-            return pointForIndex(0)
-        }
-        if (fraction == 1f) {
-            return pointForIndex(numPoints - 1)
-        }
-        // Binary search for the correct section.
-        var low = 0
-        var high = numPoints - 1
-        while (low <= high) {
-            val mid = (low + high) / 2
-            val midFraction = keyframeData[mid * NUM_COMPONENTS + FRACTION_OFFSET]
-            if (fraction < midFraction) {
-                high = mid - 1
-            } else if (fraction > midFraction) {
-                low = mid + 1
-            } else {
-                return pointForIndex(mid)
+        val startIndex = when {
+            fraction <= 0 -> 0
+            fraction >= 1 -> numPoints - 2
+            else -> {
+                // Binary search for the last point whose fraction is less than or equal to the fraction.
+                var low = 0
+                var high = numPoints - 1
+                while (low <= high) {
+                    val mid = (low + high) / 2
+                    if (fraction < keyframeData[mid * NUM_COMPONENTS + FRACTION_OFFSET]) {
+                        high = mid - 1
+                    } else {
+                        low = mid + 1
+                    }
+                }
+                Math.min(high, numPoints - 2)
             }
         }
-        // Now high is below the fraction and low is above the fraction.
-        return interpolateInRange(fraction, high, low)
-    }
-
-    private fun interpolateInRange(fraction: Float, startIndex: Int, endIndex: Int): PointF {
-        val startBase = startIndex * NUM_COMPONENTS
-        val endBase = endIndex * NUM_COMPONENTS
-        val startFraction = keyframeData[startBase + FRACTION_OFFSET]
-        val endFraction = keyframeData[endBase + FRACTION_OFFSET]
-        val intervalFraction = (fraction - startFraction) / (endFraction - startFraction)
-        val startX = keyframeData[startBase + X_OFFSET]
-        val endX = keyframeData[endBase + X_OFFSET]
-        val startY = keyframeData[startBase + Y_OFFSET]
-        val endY = keyframeData[endBase + Y_OFFSET]
-        val x = lerp(startX, endX, intervalFraction)
-        val y = lerp(startY, endY, intervalFraction)
-        tempPointF.set(x, y)
-        return tempPointF
+        val startFraction = keyframeData[startIndex * NUM_COMPONENTS + FRACTION_OFFSET]
+        val endFraction = keyframeData[(startIndex + 1) * NUM_COMPONENTS + FRACTION_OFFSET]
+        intervalFraction = if (endFraction == startFraction) 1f else (fraction - startFraction) / (endFraction - startFraction)
+        return startIndex
     }
 
-    private fun pointForIndex(index: Int): PointF {
-        val base = index * NUM_COMPONENTS
-        val xOffset = base + X_OFFSET
-        val yOffset = base + Y_OFFSET
-        tempPointF.set(keyframeData[xOffset], keyframeData[yOffset])
-        return tempPointF
+    /** Identifies a [PathData] object by its content. */
+    private class PathDataKey(pathData: PathData) {
+        private val commands = pathData.commands
+        private val params = pathData.expand().params.copyOf()
+        private val hashCode = 31 * Arrays.hashCode(commands) + Arrays.hashCode(params)
+
+        override fun equals(other: Any?): Boolean {
+            return other is PathDataKey
+                    && hashCode == other.hashCode
+                    && Arrays.equals(commands, other.commands)
+                    && Arrays.equals(params, other.params)
+        }
+
+        override fun hashCode(): Int {
+            return hashCode
+        }
+    }
+
+    private data class ApproximationKey(val cacheKey: Any, val tolerance: Float)
+
+    companion object {
+        // The most recently computed approximations, shared by all keyframe sets.
+        private val approximations = object : LinkedHashMap<ApproximationKey, FloatArray>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<ApproximationKey, FloatArray>): Boolean {
+                return size > MAX_CACHED_APPROXIMATIONS
+            }
+        }
     }
 }
 
@@ -102,53 +211,165 @@ private fun approximate(path: Path, @FloatRange(from = 0.0) acceptableError: Flo
     // Measure the total length the whole pathData.
     val measureForTotalLength = PathMeasure(path, false)
     var totalLength = 0f
-    // The sum of the previous contour plus the current one. Using the sum here
-    // because we want to directly subtract from it later.
-    val summedContourLengths = mutableListOf<Float>()
-    summedContourLengths.add(0f)
+    val contourLengths = mutableListOf<Float>()
     do {
         val pathLength = measureForTotalLength.length
         totalLength += pathLength
-        summedContourLengths.add(totalLength)
+        contourLengths.add(pathLength)
     } while (measureForTotalLength.nextContour())
 
-    // Now determine how many sample points we need, and the step for next sample.
     val pathMeasure = PathMeasure(path, false)
+    val position = FloatArray(2)
+    if (totalLength == 0f) {
+        // The path doesn't move anywhere, so its first point is used for the entire animation.
+        pathMeasure.getPosTan(0f, position, null)
+        return floatArrayOf(0f, position[0], position[1], 1f, position[0], position[1])
+    }
 
-    val numPoints = Math.min(MAX_NUM_POINTS, (totalLength / acceptableError).toInt() + 1)
+    val approximator = Approximator(pathMeasure, totalLength, acceptableError)
+    var previousContoursLength = 0f
+    for (i in contourLengths.indices) {
+        if (i > 0) {
+            pathMeasure.nextContour()
+        }
+        val contourLength = contourLengths[i]
+        if (contourLength > 0) {
+            approximator.approximateContour(previousContoursLength, contourLength)
+        }
+        previousContoursLength += contourLength
+    }
+    return approximator.finish()
+}
 
-    val coords = FloatArray(NUM_COMPONENTS * numPoints)
-    val position = FloatArray(2)
+/**
+ * Approximates each of a path's contours by recursively halving the distance between two
+ * sampled points until the point sampled halfway between them lies within the acceptable error
+ * of the straight line's midpoint. Measuring the error at the midpoint in terms of distance
+ * traveled ensures the approximation is accurate both in position and in speed.
+ */
+private class Approximator(
+        private val pathMeasure: PathMeasure,
+        private val totalLength: Float,
+        private val acceptableError: Float
+) {
+    private var coords = FloatArray(NUM_APPROXIMATED_COMPONENTS * 64)
+    private var numPoints = 0
+    private val position = FloatArray(2)
 
-    var contourIndex = 0
-    val step = totalLength / (numPoints - 1)
-    var cumulativeDistance = 0f
+    fun approximateContour(previousContoursLength: Float, contourLength: Float) {
+        pathMeasure.getPosTan(0f, position, null)
+        addPoint(previousContoursLength, position[0], position[1])
+        var startX = position[0]
+        var startY = position[1]
+        for (i in 1..NUM_INITIAL_SEGMENTS) {
+            val startDistance = contourLength * (i - 1) / NUM_INITIAL_SEGMENTS
+            val endDistance = if (i == NUM_INITIAL_SEGMENTS) contourLength else contourLength * i / NUM_INITIAL_SEGMENTS
+            pathMeasure.getPosTan(endDistance, position, null)
+            val endX = position[0]
+            val endY = position[1]
+            subdivide(previousContoursLength, startDistance, startX, startY, endDistance, endX, endY, 0)
+            startX = endX
+            startY = endY
+        }
+    }
 
-    // For each sample point, determine whether we need to move on to next contour.
-    // After we find the right contour, then sample it using the current distance value minus
-    // the previously sampled contours' total length.
-    for (i in 0 until numPoints) {
-        // The cumulative distance traveled minus the total length of the previous contours
-        // (not including the current contour).
-        val contourDistance = cumulativeDistance - summedContourLengths[contourIndex]
-        pathMeasure.getPosTan(contourDistance, position, null)
+    /** Adds the points following the start point up to and including the end point. */
+    private fun subdivide(
+            previousContoursLength: Float,
+            startDistance: Float,
+            startX: Float,
+            startY: Float,
+            endDistance: Float,
+            endX: Float,
+            endY: Float,
+            depth: Int
+    ) {
+        if (depth < MAX_SUBDIVISION_DEPTH) {
+            val midDistance = (startDistance + endDistance) / 2
+            pathMeasure.getPosTan(midDistance, position, null)
+            val midX = position[0]
+            val midY = position[1]
+            val dx = midX - (startX + endX) / 2
+            val dy = midY - (startY + endY) / 2
+            if (dx * dx + dy * dy > acceptableError * acceptableError) {
+                subdivide(previousContoursLength, startDistance, startX, startY, midDistance, midX, midY, depth + 1)
+                subdivide(previousContoursLength, midDistance, midX, midY, endDistance, endX, endY, depth + 1)
+                return
+            }
+        }
+        addPoint(previousContoursLength + endDistance, endX, endY)
+    }
 
-        coords[i * NUM_COMPONENTS + FRACTION_OFFSET] = cumulativeDistance / totalLength
-        coords[i * NUM_COMPONENTS + X_OFFSET] = position[0]
-        coords[i * NUM_COMPONENTS + Y_OFFSET] = position[1]
+    private fun addPoint(distance: Float, x: Float, y: Float) {
+        if ((numPoints + 1) * NUM_APPROXIMATED_COMPONENTS > coords.size) {
+            coords = coords.copyOf(coords.size * 2)
+        }
+        val base = numPoints * NUM_APPROXIMATED_COMPONENTS
+        coords[base + FRACTION_OFFSET] = Math.min(distance / totalLength, 1f)
+        coords[base + X_OFFSET] = x
+        coords[base + Y_OFFSET] = y
+        numPoints++
+    }
 
-        cumulativeDistance = Math.min(cumulativeDistance + step, totalLength)
+    fun finish(): FloatArray {
+        coords[(numPoints - 1) * NUM_APPROXIMATED_COMPONENTS + FRACTION_OFFSET] = 1f
+        return coords.copyOf(numPoints * NUM_APPROXIMATED_COMPONENTS)
+    }
+}
 
-        // Using a while statement is necessary in the rare case where step is greater than
-        // the length a path contour.
-        while (summedContourLengths[contourIndex + 1] < cumulativeDistance) {
-            contourIndex++
-            pathMeasure.nextContour()
+/**
+ * Converts the points returned by [approximate] into points that also store the angle of the
+ * path's tangent at each point (in degrees). The angle at each point is the average of the angles
+ * of the line segments on either side of it, and angles are unwrapped so that interpolating
+ * between two consecutive points never rotates the long way around.
+ */
+@Size(multiple = 4)
+private fun withTangentAngles(@Size(multiple = 3) approximation: FloatArray): FloatArray {
+    val numPoints = approximation.size / NUM_APPROXIMATED_COMPONENTS
+    // The angle of the line segment starting at each point, or NaN if the segment is degenerate
+    // or jumps between two contours.
+    val segmentAngles = FloatArray(numPoints - 1) { i ->
+        val start = i * NUM_APPROXIMATED_COMPONENTS
+        val end = start + NUM_APPROXIMATED_COMPONENTS
+        val dx = approximation[end + X_OFFSET] - approximation[start + X_OFFSET]
+        val dy = approximation[end + Y_OFFSET] - approximation[start + Y_OFFSET]
+        if ((dx == 0f && dy == 0f) || approximation[end + FRACTION_OFFSET] == approximation[start + FRACTION_OFFSET]) {
+            Float.NaN
+        } else {
+            Math.toDegrees(Math.atan2(dy.toDouble(), dx.toDouble())).toFloat()
+        }
+    }
+    val result = FloatArray(numPoints * NUM_COMPONENTS)
+    var prevAngle = segmentAngles.firstOrNull { !it.isNaN() } ?: 0f
+    for (i in 0 until numPoints) {
+        val incomingAngle = if (i > 0) segmentAngles[i - 1] else Float.NaN
+        val outgoingAngle = if (i < numPoints - 1) segmentAngles[i] else Float.NaN
+        var angle = when {
+            incomingAngle.isNaN() && outgoingAngle.isNaN() -> prevAngle
+            incomingAngle.isNaN() -> outgoingAngle
+            outgoingAngle.isNaN() -> incomingAngle
+            else -> incomingAngle + getAngleDelta(incomingAngle, outgoingAngle) / 2
         }
+        angle = prevAngle + getAngleDelta(prevAngle, angle)
+        val src = i * NUM_APPROXIMATED_COMPONENTS
+        val dst = i * NUM_COMPONENTS
+        result[dst + FRACTION_OFFSET] = approximation[src + FRACTION_OFFSET]
+        result[dst + X_OFFSET] = approximation[src + X_OFFSET]
+        result[dst + Y_OFFSET] = approximation[src + Y_OFFSET]
+        result[dst + ANGLE_OFFSET] = angle
+        prevAngle = angle
     }
+    return result
+}
 
-    coords[(numPoints - 1) * NUM_COMPONENTS + FRACTION_OFFSET] = 1f
-    return coords
+/** @return The signed difference between two angles in degrees, in the range [-180, 180). */
+private fun getAngleDelta(fromAngle: Float, toAngle: Float): Float {
+    val delta = (toAngle - fromAngle) % 360
+    return when {
+        delta >= 180 -> delta - 360
+        delta < -180 -> delta + 360
+        else -> delta
+    }
 }
 
 private fun lerp(a: Float, b: Float, @FloatRange(from = 0.0, to = 1.0) t: Float): Float {
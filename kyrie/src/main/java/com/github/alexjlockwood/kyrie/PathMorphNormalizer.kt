@@ -0,0 +1,411 @@
+package com.github.alexjlockwood.kyrie
+
+import android.graphics.RectF
+import java.util.ArrayList
+import java.util.LinkedHashMap
+
+private const val MAX_CACHED_NORMALIZATIONS = 32
+
+/**
+ * Converts a list of arbitrary [PathData] objects into a list of mutually morphable [PathData]
+ * objects that draw the same shapes. Each path is first converted into a list of contours made
+ * up entirely of absolute cubic Bezier segments. Each path's contours are paired with the
+ * contours of the previous path whose bounds are closest to their own, and contours without a
+ * counterpart are paired with empty contours. Contours with fewer segments then have their longest
+ * segment subdivided until every path has the same number of contours and segments, and closed
+ * contours are rotated to start at the point that best lines up with the previous path's contour,
+ * so that the morph doesn't twist. The resulting paths consist of the same sequence of `M`, `C`,
+ * and `Z` commands, so they can be morphed using a plain linear interpolation of their params.
+ *
+ * A contour that is closed in any of the paths is closed in all of the normalized paths, so an
+ * open contour that is morphed into a closed one is drawn with a closing line during the morph.
+ */
+internal object PathMorphNormalizer {
+
+    // Normalizations are relatively expensive, so the most recent results are cached
+    // (keyed by the identities of the paths that were normalized).
+    private val cache = object : LinkedHashMap<CacheKey, List<PathData>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<CacheKey, List<PathData>>): Boolean {
+            return size > MAX_CACHED_NORMALIZATIONS
+        }
+    }
+
+    /**
+     * Returns a list of mutually morphable [PathData] objects that draw the same shapes as the
+     * given [PathData] objects.
+     */
+    fun normalize(pathDatas: List<PathData>): List<PathData> {
+        val key = CacheKey(pathDatas)
+        synchronized(cache) {
+            cache[key]?.let { return it }
+        }
+        val result = normalizeInternal(pathDatas)
+        synchronized(cache) {
+            cache[key] = result
+        }
+        return result
+    }
+
+    private fun normalizeInternal(pathDatas: List<PathData>): List<PathData> {
+        val contourLists = matchContours(pathDatas.map { toContours(it) })
+        val numContours = contourLists[0].size
+
+        // Subdivide contours so that corresponding contours have the same number of segments.
+        for (i in 0 until numContours) {
+            val numSegments = Math.max(1, contourLists.map { it[i].numSegments }.max() ?: 0)
+            contourLists.forEach { it[i].subdivide(numSegments) }
+        }
+
+        // Start each closed contour at the point that lines up best with the previous path.
+        for (j in 1 until contourLists.size) {
+            for (i in 0 until numContours) {
+                val contour = contourLists[j][i]
+                val previousContour = contourLists[j - 1][i]
+                if (contour.isClosed && previousContour.isClosed) {
+                    contour.alignStartWith(previousContour)
+                }
+            }
+        }
+
+        // The closing line segments of closed contours are explicit, so a contour that is closed
+        // in any path can be closed in every path without changing the shape of the closed ones.
+        val isClosed = BooleanArray(numContours) { i -> contourLists.any { it[i].isClosed } }
+        return contourLists.map { toPathData(it, isClosed) }
+    }
+
+    /**
+     * Reorders the contours of each path so that each contour is paired with the contour of the
+     * previous path whose bounds are closest to its own, and pads the paths with empty contours
+     * so that they all have the same number of contours.
+     */
+    private fun matchContours(contourLists: List<List<Contour>>): List<MutableList<Contour>> {
+        // The most recently matched contour in each position.
+        val references = ArrayList<Contour>(contourLists[0])
+        val matchedLists = ArrayList<ArrayList<Contour?>>(contourLists.size)
+        matchedLists.add(ArrayList<Contour?>(contourLists[0]))
+        for (j in 1 until contourLists.size) {
+            val contours = contourLists[j]
+            val matched = ArrayList<Contour?>(references.size)
+            references.forEach { matched.add(null) }
+            val referenceBounds = references.map { it.computeBounds() }
+            val bounds = contours.map { it.computeBounds() }
+            val isPaired = BooleanArray(contours.size)
+            // Greedily pair the closest remaining contours until either path runs out.
+            for (n in 0 until Math.min(references.size, contours.size)) {
+                var bestReference = -1
+                var bestContour = -1
+                var bestDistance = Float.POSITIVE_INFINITY
+                for (r in references.indices) {
+                    if (matched[r] != null) {
+                        continue
+                    }
+                    for (c in contours.indices) {
+                        if (isPaired[c]) {
+                            continue
+                        }
+                        val distance = getDistance(referenceBounds[r], bounds[c])
+                        if (bestReference < 0 || distance < bestDistance) {
+                            bestReference = r
+                            bestContour = c
+                            bestDistance = distance
+                        }
+                    }
+                }
+                matched[bestReference] = contours[bestContour]
+                isPaired[bestContour] = true
+            }
+            // Contours without a counterpart are placed in new positions of their own.
+            for (c in contours.indices) {
+                if (!isPaired[c]) {
+                    references.add(contours[c])
+                    matched.add(contours[c])
+                }
+            }
+            for (r in matched.indices) {
+                matched[r]?.let { references[r] = it }
+            }
+            matchedLists.add(matched)
+        }
+
+        // Replace missing contours with empty contours, each located at the center of the
+        // nearest path's contour in the same position.
+        return matchedLists.mapIndexed { j, matched ->
+            MutableList(references.size) { i ->
+                matched.getOrNull(i) ?: createEmptyContour(matchedLists, i, j)
+            }
+        }
+    }
+
+    private fun createEmptyContour(matchedLists: List<List<Contour?>>, position: Int, pathIndex: Int): Contour {
+        for (distance in 1 until matchedLists.size) {
+            for (j in intArrayOf(pathIndex - distance, pathIndex + distance)) {
+                val contour = matchedLists.getOrNull(j)?.getOrNull(position) ?: continue
+                val bounds = contour.computeBounds()
+                return Contour(bounds.centerX(), bounds.centerY())
+            }
+        }
+        throw IllegalStateException("No path has a contour at position $position")
+    }
+
+    /** @return The sum of the squared distances between the edges of two bounding rectangles. */
+    private fun getDistance(a: RectF, b: RectF): Float {
+        val dl = a.left - b.left
+        val dt = a.top - b.top
+        val dr = a.right - b.right
+        val db = a.bottom - b.bottom
+        return dl * dl + dt * dt + dr * dr + db * db
+    }
+
+    /** Converts a [PathData] object into a list of contours made up of absolute cubic segments. */
+    private fun toContours(pathData: PathData): MutableList<Contour> {
+        val recorder = ContourRecorder()
+        PathDataUtils.toPath(pathData, recorder)
+        return recorder.finish()
+    }
+
+    private fun toPathData(contours: List<Contour>, isClosed: BooleanArray): PathData {
+        var numCommands = 0
+        var numParams = 0
+        for (i in contours.indices) {
+            val numSegments = contours[i].numSegments
+            numCommands += 1 + numSegments + if (isClosed[i]) 1 else 0
+            numParams += 2 + numSegments * 6
+        }
+        val commands = ByteArray(numCommands)
+        val paramOffsets = IntArray(numCommands + 1)
+        val params = FloatArray(numParams)
+        var c = 0
+        var p = 0
+        for (i in contours.indices) {
+            val contour = contours[i]
+            commands[c++] = 'M'.toByte()
+            params[p++] = contour.startX
+            params[p++] = contour.startY
+            paramOffsets[c] = p
+            for (segment in contour.segments) {
+                commands[c++] = 'C'.toByte()
+                System.arraycopy(segment, 0, params, p, 6)
+                p += 6
+                paramOffsets[c] = p
+            }
+            if (isClosed[i]) {
+                commands[c++] = 'Z'.toByte()
+                paramOffsets[c] = p
+            }
+        }
+        return PathData(commands, paramOffsets, params)
+    }
+
+    /**
+     * A single contour made up of cubic Bezier segments. Each segment is stored as a
+     * `FloatArray` containing its two control points followed by its end point.
+     */
+    private class Contour(startX: Float, startY: Float) {
+        var startX = startX
+            private set
+        var startY = startY
+            private set
+        val segments = ArrayList<FloatArray>()
+        var isClosed = false
+
+        val numSegments: Int
+            get() = segments.size
+
+        /** @return The bounds of the contour's control points, which contain the contour. */
+        fun computeBounds(): RectF {
+            val bounds = RectF(startX, startY, startX, startY)
+            for (segment in segments) {
+                for (j in 0 until 6 step 2) {
+                    bounds.union(segment[j], segment[j + 1])
+                }
+            }
+            return bounds
+        }
+
+        /**
+         * Rotates the segments of a closed contour so that the contour starts at whichever of
+         * its segment end points minimizes the summed squared distance between its end points
+         * and the other contour's end points. Both contours must have the same number of segments.
+         */
+        fun alignStartWith(other: Contour) {
+            val numSegments = segments.size
+            var bestOffset = 0
+            var bestDistance = Float.POSITIVE_INFINITY
+            for (offset in 0 until numSegments) {
+                var distance = 0f
+                for (i in 0 until numSegments) {
+                    val s = segments[(offset + i) % numSegments]
+                    val o = other.segments[i]
+                    val dx = s[4] - o[4]
+                    val dy = s[5] - o[5]
+                    distance += dx * dx + dy * dy
+                }
+                if (distance < bestDistance) {
+                    bestOffset = offset
+                    bestDistance = distance
+                }
+            }
+            if (bestOffset == 0) {
+                return
+            }
+            // Closed contours end at their start point, so the new start point is the
+            // end point of the segment preceding the new first segment.
+            val newStart = segments[bestOffset - 1]
+            startX = newStart[4]
+            startY = newStart[5]
+            val rotated = ArrayList<FloatArray>(numSegments)
+            rotated.addAll(segments.subList(bestOffset, numSegments))
+            rotated.addAll(segments.subList(0, bestOffset))
+            segments.clear()
+            segments.addAll(rotated)
+        }
+
+        fun addCubic(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float) {
+            segments.add(floatArrayOf(x1, y1, x2, y2, x3, y3))
+        }
+
+        /** Splits the longest segment in half until the contour has the given number of segments. */
+        fun subdivide(numSegments: Int) {
+            if (segments.isEmpty() && numSegments > 0) {
+                // An empty contour is expanded into a series of degenerate segments.
+                addCubic(startX, startY, startX, startY, startX, startY)
+            }
+            while (segments.size < numSegments) {
+                var longestIndex = 0
+                var longestLength = -1f
+                for (i in segments.indices) {
+                    val length = getLength(i)
+                    if (length > longestLength) {
+                        longestIndex = i
+                        longestLength = length
+                    }
+                }
+                split(longestIndex)
+            }
+        }
+
+        /** @return The length of the segment's control polygon, which bounds the segment's length. */
+        private fun getLength(index: Int): Float {
+            val s = segments[index]
+            val x0 = if (index == 0) startX else segments[index - 1][4]
+            val y0 = if (index == 0) startY else segments[index - 1][5]
+            return distance(x0, y0, s[0], s[1]) + distance(s[0], s[1], s[2], s[3]) + distance(s[2], s[3], s[4], s[5])
+        }
+
+        /** Splits the segment at the given index in half using de Casteljau's algorithm. */
+        private fun split(index: Int) {
+            val s = segments[index]
+            val x0 = if (index == 0) startX else segments[index - 1][4]
+            val y0 = if (index == 0) startY else segments[index - 1][5]
+            val x01 = (x0 + s[0]) / 2
+            val y01 = (y0 + s[1]) / 2
+            val x12 = (s[0] + s[2]) / 2
+            val y12 = (s[1] + s[3]) / 2
+            val x23 = (s[2] + s[4]) / 2
+            val y23 = (s[3] + s[5]) / 2
+            val x012 = (x01 + x12) / 2
+            val y012 = (y01 + y12) / 2
+            val x123 = (x12 + x23) / 2
+            val y123 = (y12 + y23) / 2
+            val x0123 = (x012 + x123) / 2
+            val y0123 = (y012 + y123) / 2
+            segments[index] = floatArrayOf(x01, y01, x012, y012, x0123, y0123)
+            segments.add(index + 1, floatArrayOf(x123, y123, x23, y23, s[4], s[5]))
+        }
+
+        private fun distance(x0: Float, y0: Float, x1: Float, y1: Float): Float {
+            return Math.hypot((x1 - x0).toDouble(), (y1 - y0).toDouble()).toFloat()
+        }
+    }
+
+    /** A [PathSink] that records a path as a list of contours made up of cubic segments. */
+    private class ContourRecorder : PathSink {
+        private val contours = ArrayList<Contour>()
+        private var contour: Contour? = null
+        private var lastX = 0f
+        private var lastY = 0f
+
+        override fun moveTo(x: Float, y: Float) {
+            finishContour()
+            contour = Contour(x, y)
+            lastX = x
+            lastY = y
+        }
+
+        override fun lineTo(x: Float, y: Float) {
+            val dx = x - lastX
+            val dy = y - lastY
+            cubicTo(lastX + dx / 3, lastY + dy / 3, lastX + dx * 2 / 3, lastY + dy * 2 / 3, x, y)
+        }
+
+        override fun rLineTo(dx: Float, dy: Float) {
+            // Zero-length lines don't change the contour's shape, so they aren't recorded
+            // as segments that would need to be morphed.
+            if (dx != 0f || dy != 0f) {
+                lineTo(lastX + dx, lastY + dy)
+            }
+        }
+
+        override fun quadTo(x1: Float, y1: Float, x2: Float, y2: Float) {
+            // Elevate the quadratic Bezier curve to a cubic Bezier curve.
+            cubicTo(
+                    lastX + (x1 - lastX) * 2 / 3,
+                    lastY + (y1 - lastY) * 2 / 3,
+                    x2 + (x1 - x2) * 2 / 3,
+                    y2 + (y1 - y2) * 2 / 3,
+                    x2,
+                    y2)
+        }
+
+        override fun cubicTo(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float) {
+            var contour = this.contour
+            if (contour == null) {
+                contour = Contour(lastX, lastY)
+                this.contour = contour
+            }
+            contour.addCubic(x1, y1, x2, y2, x3, y3)
+            lastX = x3
+            lastY = y3
+        }
+
+        override fun close() {
+            val contour = contour ?: return
+            if (lastX != contour.startX || lastY != contour.startY) {
+                // Make the closing line segment explicit so that it can be morphed.
+                lineTo(contour.startX, contour.startY)
+            }
+            contour.isClosed = true
+            finishContour()
+        }
+
+        private fun finishContour() {
+            val contour = contour ?: return
+            // Contours without any segments don't draw anything, so they can be dropped.
+            if (contour.numSegments > 0) {
+                contours.add(contour)
+            }
+            this.contour = null
+        }
+
+        fun finish(): MutableList<Contour> {
+            finishContour()
+            return contours
+        }
+    }
+
+    /** Identifies a list of [PathData] objects by the identities of its elements. */
+    private class CacheKey(private val pathDatas: List<PathData>) {
+        private val hashCode = pathDatas.fold(1) { hash, pathData -> 31 * hash + System.identityHashCode(pathData) }
+
+        override fun equals(other: Any?): Boolean {
+            if (other !is CacheKey || hashCode != other.hashCode || pathDatas.size != other.pathDatas.size) {
+                return false
+            }
+            return pathDatas.indices.all { pathDatas[it] === other.pathDatas[it] }
+        }
+
+        override fun hashCode(): Int {
+            return hashCode
+        }
+    }
+}
@@ -28,6 +28,7 @@ class PathNode private constructor(
         strokeDashOffset: List<Animation<*, Float>>,
         fillType: FillType,
         isStrokeScaling: Boolean,
+        isStrokeOutlineCached: Boolean,
         private val pathData: List<Animation<*, PathData>>
 ) : RenderNode(
         rotation,
@@ -53,7 +54,8 @@ class PathNode private constructor(
         strokeDashArray,
         strokeDashOffset,
         fillType,
-        isStrokeScaling
+        isStrokeScaling,
+        isStrokeOutlineCached
 ) {
 
     // <editor-fold desc="Layer">
@@ -63,10 +65,15 @@ class PathNode private constructor(
     }
 
     internal class PathLayer(timeline: PropertyTimeline, node: PathNode) : RenderNode.RenderLayer(timeline, node) {
-        private val pathData = registerAnimatableProperty(node.pathData)
+        private val pathData = registerPathDataProperty(node.pathData)
+        private val pathWriter = PathDataUtils.PathWriter()
 
         override fun onInitPath(outPath: Path) {
-            PathData.toPath(pathData.animatedValue, outPath)
+            pathWriter.toPath(pathData.animatedValue, outPath)
+        }
+
+        override fun getGeometryVersion(): Int {
+            return pathData.version
         }
     }
 
@@ -129,6 +136,7 @@ class PathNode private constructor(
                     strokeDashOffset,
                     fillType,
                     isScalingStroke,
+                    isStrokeOutlineCached,
                     pathData
             )
         }
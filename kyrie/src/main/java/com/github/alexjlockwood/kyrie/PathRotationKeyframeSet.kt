@@ -0,0 +1,23 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * A [KeyframeSet] that outputs the angle of a path's tangent (in degrees), so that objects moving
+ * along the path can be oriented along it. The angles are read from the same table that the given
+ * [PathKeyframeSet] uses to compute positions along the path.
+ */
+internal class PathRotationKeyframeSet(private val pathKeyframeSet: PathKeyframeSet) : KeyframeSet<Float>() {
+
+    override val keyframes: List<Keyframe<Float>> = emptyList()
+
+    override fun prepare(pixelsPerUnit: Float) {
+        pathKeyframeSet.prepare(pixelsPerUnit)
+    }
+
+    override fun getAnimatedValue(fraction: Float): Float {
+        return getAnimatedFloatValue(fraction)
+    }
+
+    override fun getAnimatedFloatValue(fraction: Float): Float {
+        return pathKeyframeSet.getAnimatedAngle(fraction)
+    }
+}
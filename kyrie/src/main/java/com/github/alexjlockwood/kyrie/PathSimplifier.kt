@@ -0,0 +1,421 @@
+package com.github.alexjlockwood.kyrie
+
+import java.util.ArrayList
+import java.util.LinkedHashMap
+
+private const val MAX_CACHED_SIMPLIFICATIONS = 64
+
+/** The fractions of each original segment at which the error of a merged cubic is measured. */
+private val ERROR_SAMPLES = floatArrayOf(0.25f, 0.5f, 0.75f)
+
+/**
+ * Simplifies [PathData] objects by removing detail that is smaller than a given tolerance. Each
+ * contour of the path is simplified independently:
+ *
+ * - Segments whose points all lie within the tolerance of the previous segment's end point are
+ *   dropped.
+ * - Runs of line segments are reduced using the Ramer-Douglas-Peucker algorithm, which merges
+ *   lines that are collinear to within the tolerance.
+ * - Runs of cubic Bezier segments are greedily merged into single cubic segments for as long as
+ *   the merged segment stays within the tolerance of the segments it replaces.
+ *
+ * The start and end points of each contour are preserved exactly. The simplified path consists
+ * of absolute `M`, `L`, `Q`, `C`, and `Z` commands.
+ */
+internal object PathSimplifier {
+
+    // Simplifications are relatively expensive, so the most recent results are cached
+    // (keyed by the identity of the simplified path and the tolerance that was used).
+    private val cache = object : LinkedHashMap<CacheKey, PathData>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<CacheKey, PathData>): Boolean {
+            return size > MAX_CACHED_SIMPLIFICATIONS
+        }
+    }
+
+    fun simplify(pathData: PathData, tolerance: Float): PathData {
+        if (tolerance < 0) {
+            throw IllegalArgumentException("Tolerance must be non-negative: $tolerance")
+        }
+        if (tolerance == 0f) {
+            return pathData
+        }
+        val key = CacheKey(pathData, tolerance)
+        synchronized(cache) {
+            cache[key]?.let { return it }
+        }
+        val simplifier = ContourSimplifier(tolerance)
+        PathDataUtils.toPath(pathData, simplifier)
+        val result = simplifier.finish()
+        synchronized(cache) {
+            cache[key] = result
+        }
+        return result
+    }
+
+    /**
+     * A [PathSink] that records each contour of a path, then writes a simplified version of the
+     * contour to a [PathDataUtils.PathDataBuffer] once the contour is complete. Each segment is
+     * stored as a `FloatArray` containing its control points (if any) followed by its end point.
+     */
+    private class ContourSimplifier(private val tolerance: Float) : PathSink {
+        private val buffer = PathDataUtils.PathDataBuffer()
+        private val segments = ArrayList<FloatArray>()
+        private var hasContour = false
+        private var startX = 0f
+        private var startY = 0f
+        private var lastX = 0f
+        private var lastY = 0f
+
+        override fun moveTo(x: Float, y: Float) {
+            finishContour(false)
+            hasContour = true
+            startX = x
+            startY = y
+            lastX = x
+            lastY = y
+        }
+
+        override fun lineTo(x: Float, y: Float) {
+            addSegment(floatArrayOf(x, y))
+        }
+
+        override fun rLineTo(dx: Float, dy: Float) {
+            lineTo(lastX + dx, lastY + dy)
+        }
+
+        override fun quadTo(x1: Float, y1: Float, x2: Float, y2: Float) {
+            addSegment(floatArrayOf(x1, y1, x2, y2))
+        }
+
+        override fun cubicTo(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float) {
+            addSegment(floatArrayOf(x1, y1, x2, y2, x3, y3))
+        }
+
+        override fun close() {
+            if (hasContour) {
+                finishContour(true)
+                // Segments that follow a close command begin at the start of the closed contour.
+                lastX = startX
+                lastY = startY
+            }
+        }
+
+        fun finish(): PathData {
+            finishContour(false)
+            return buffer.toPathData()
+        }
+
+        private fun addSegment(segment: FloatArray) {
+            if (!hasContour) {
+                hasContour = true
+                startX = lastX
+                startY = lastY
+            }
+            segments.add(segment)
+            lastX = segment[segment.size - 2]
+            lastY = segment[segment.size - 1]
+        }
+
+        private fun finishContour(isClosed: Boolean) {
+            if (!hasContour) {
+                return
+            }
+            // Contours without any segments don't draw anything, so they can be dropped.
+            if (segments.isNotEmpty()) {
+                buffer.beginCommand('M')
+                buffer.addParam(startX)
+                buffer.addParam(startY)
+                buffer.endCommand()
+                val simplifiedSegments = mergeSegments(dropShortSegments())
+                for (segment in simplifiedSegments) {
+                    val command = when (segment.size) {
+                        2 -> 'L'
+                        4 -> 'Q'
+                        else -> 'C'
+                    }
+                    buffer.beginCommand(command)
+                    for (param in segment) {
+                        buffer.addParam(param)
+                    }
+                    buffer.endCommand()
+                }
+                if (isClosed) {
+                    buffer.beginCommand('Z')
+                    buffer.endCommand()
+                }
+            }
+            segments.clear()
+            hasContour = false
+        }
+
+        /**
+         * Drops the segments whose points all lie within the tolerance of the previous kept
+         * segment's end point. The last kept segment is then extended to the contour's end point,
+         * which is at most the tolerance away from where the segment originally ended.
+         */
+        private fun dropShortSegments(): List<FloatArray> {
+            val keptSegments = ArrayList<FloatArray>(segments.size)
+            var x = startX
+            var y = startY
+            for (segment in segments) {
+                if (isWithinTolerance(segment, x, y)) {
+                    continue
+                }
+                keptSegments.add(segment)
+                x = segment[segment.size - 2]
+                y = segment[segment.size - 1]
+            }
+            if (keptSegments.isEmpty()) {
+                // The entire contour is smaller than the tolerance (i.e. a dot drawn with a
+                // round stroke cap), so leave it alone rather than erasing it.
+                return ArrayList(segments)
+            }
+            val last = segments[segments.size - 1]
+            val endX = last[last.size - 2]
+            val endY = last[last.size - 1]
+            val lastKept = keptSegments[keptSegments.size - 1]
+            if (lastKept !== last) {
+                // Move the segment's end point (and its adjacent control point, if it's a cubic)
+                // so that the contour still ends exactly where it did before.
+                val moved = lastKept.copyOf()
+                val dx = endX - moved[moved.size - 2]
+                val dy = endY - moved[moved.size - 1]
+                moved[moved.size - 2] = endX
+                moved[moved.size - 1] = endY
+                if (moved.size == 6) {
+                    moved[2] += dx
+                    moved[3] += dy
+                }
+                keptSegments[keptSegments.size - 1] = moved
+            }
+            return keptSegments
+        }
+
+        private fun isWithinTolerance(segment: FloatArray, x: Float, y: Float): Boolean {
+            for (i in 0 until segment.size step 2) {
+                if (distance(x, y, segment[i], segment[i + 1]) > tolerance) {
+                    return false
+                }
+            }
+            return true
+        }
+
+        /** Merges each run of line segments and each run of cubic segments in the contour. */
+        private fun mergeSegments(segments: List<FloatArray>): List<FloatArray> {
+            val mergedSegments = ArrayList<FloatArray>(segments.size)
+            var x = startX
+            var y = startY
+            var runStart = 0
+            while (runStart < segments.size) {
+                val runSize = segments[runStart].size
+                var runEnd = runStart + 1
+                while (runEnd < segments.size && segments[runEnd].size == runSize) {
+                    runEnd++
+                }
+                when (runSize) {
+                    2 -> mergeLines(segments, runStart, runEnd, x, y, mergedSegments)
+                    6 -> mergeCubics(segments, runStart, runEnd, x, y, mergedSegments)
+                    else -> mergedSegments.addAll(segments.subList(runStart, runEnd))
+                }
+                val last = segments[runEnd - 1]
+                x = last[last.size - 2]
+                y = last[last.size - 1]
+                runStart = runEnd
+            }
+            return mergedSegments
+        }
+
+        /**
+         * Reduces the run of line segments in `segments[start until end]` (which begins at the
+         * given point) using the Ramer-Douglas-Peucker algorithm.
+         */
+        private fun mergeLines(
+                segments: List<FloatArray>,
+                start: Int,
+                end: Int,
+                x0: Float,
+                y0: Float,
+                out: MutableList<FloatArray>
+        ) {
+            val numPoints = end - start + 1
+            val points = FloatArray(numPoints * 2)
+            points[0] = x0
+            points[1] = y0
+            for (i in start until end) {
+                System.arraycopy(segments[i], 0, points, (i - start + 1) * 2, 2)
+            }
+            val isKept = BooleanArray(numPoints)
+            isKept[numPoints - 1] = true
+            markKeptPoints(points, 0, numPoints - 1, isKept)
+            for (i in 1 until numPoints) {
+                if (isKept[i]) {
+                    out.add(floatArrayOf(points[i * 2], points[i * 2 + 1]))
+                }
+            }
+        }
+
+        private fun markKeptPoints(points: FloatArray, first: Int, last: Int, isKept: BooleanArray) {
+            var farthestIndex = -1
+            var farthestDistance = tolerance
+            for (i in first + 1 until last) {
+                val d = distanceToSegment(
+                        points[i * 2], points[i * 2 + 1],
+                        points[first * 2], points[first * 2 + 1],
+                        points[last * 2], points[last * 2 + 1])
+                if (d > farthestDistance) {
+                    farthestIndex = i
+                    farthestDistance = d
+                }
+            }
+            if (farthestIndex >= 0) {
+                isKept[farthestIndex] = true
+                markKeptPoints(points, first, farthestIndex, isKept)
+                markKeptPoints(points, farthestIndex, last, isKept)
+            }
+        }
+
+        /**
+         * Greedily merges the run of cubic segments in `segments[start until end]` (which begins
+         * at the given point). Each merged segment starts with the first segment of the run it
+         * replaces and grows one segment at a time until the next segment can't be merged within
+         * the tolerance.
+         */
+        private fun mergeCubics(
+                segments: List<FloatArray>,
+                start: Int,
+                end: Int,
+                x0: Float,
+                y0: Float,
+                out: MutableList<FloatArray>
+        ) {
+            var x = x0
+            var y = y0
+            var first = start
+            while (first < end) {
+                var merged = segments[first]
+                var last = first + 1
+                while (last < end) {
+                    merged = tryMergeCubics(segments, first, last, x, y) ?: break
+                    last++
+                }
+                out.add(merged)
+                x = merged[4]
+                y = merged[5]
+                first = last
+            }
+        }
+
+        /**
+         * Attempts to replace the cubic segments in `segments[first..last]` (which begin at the
+         * given point) with a single cubic segment.
+         *
+         * If the segments were created by subdividing a single cubic segment at parameters
+         * proportional to their lengths, the original segment's control points can be recovered
+         * from the tangents at the run's end points, scaled by the fraction of the run's length
+         * covered by the first and last segments.
+         *
+         * @return The merged segment, or null if it deviates from the original segments by more
+         * than the tolerance.
+         */
+        private fun tryMergeCubics(segments: List<FloatArray>, first: Int, last: Int, x0: Float, y0: Float): FloatArray? {
+            val lengths = FloatArray(last - first + 1)
+            var totalLength = 0f
+            var x = x0
+            var y = y0
+            for (i in first..last) {
+                val s = segments[i]
+                lengths[i - first] = getApproximateLength(x, y, s)
+                totalLength += lengths[i - first]
+                x = s[4]
+                y = s[5]
+            }
+            val firstFraction = lengths[0] / totalLength
+            val lastFraction = lengths[lengths.size - 1] / totalLength
+            if (firstFraction <= 0 || lastFraction <= 0) {
+                return null
+            }
+            val firstSegment = segments[first]
+            val lastSegment = segments[last]
+            val merged = floatArrayOf(
+                    x0 + (firstSegment[0] - x0) / firstFraction,
+                    y0 + (firstSegment[1] - y0) / firstFraction,
+                    lastSegment[4] + (lastSegment[2] - lastSegment[4]) / lastFraction,
+                    lastSegment[5] + (lastSegment[3] - lastSegment[5]) / lastFraction,
+                    lastSegment[4],
+                    lastSegment[5])
+
+            // Compare points on each original segment with the corresponding points on the
+            // merged segment, including the joints between the original segments.
+            var startFraction = 0f
+            x = x0
+            y = y0
+            for (i in first..last) {
+                val s = segments[i]
+                val fraction = lengths[i - first] / totalLength
+                for (t in ERROR_SAMPLES) {
+                    if (!isWithinTolerance(x, y, s, t, x0, y0, merged, startFraction + fraction * t)) {
+                        return null
+                    }
+                }
+                startFraction += fraction
+                if (i < last && !isWithinTolerance(x, y, s, 1f, x0, y0, merged, startFraction)) {
+                    return null
+                }
+                x = s[4]
+                y = s[5]
+            }
+            return merged
+        }
+
+        private fun isWithinTolerance(
+                x0: Float, y0: Float, s: FloatArray, t: Float,
+                mergedX0: Float, mergedY0: Float, merged: FloatArray, mergedT: Float
+        ): Boolean {
+            val dx = evaluateCubic(x0, s[0], s[2], s[4], t) - evaluateCubic(mergedX0, merged[0], merged[2], merged[4], mergedT)
+            val dy = evaluateCubic(y0, s[1], s[3], s[5], t) - evaluateCubic(mergedY0, merged[1], merged[3], merged[5], mergedT)
+            return dx * dx + dy * dy <= tolerance * tolerance
+        }
+
+        private fun evaluateCubic(p0: Float, p1: Float, p2: Float, p3: Float, t: Float): Float {
+            val u = 1 - t
+            return u * u * u * p0 + 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t * p3
+        }
+
+        /**
+         * @return The average of the cubic segment's chord length and the length of its control
+         * polygon, which is a close approximation of the segment's arc length.
+         */
+        private fun getApproximateLength(x0: Float, y0: Float, s: FloatArray): Float {
+            val chordLength = distance(x0, y0, s[4], s[5])
+            val polygonLength = distance(x0, y0, s[0], s[1]) + distance(s[0], s[1], s[2], s[3]) + distance(s[2], s[3], s[4], s[5])
+            return (chordLength + polygonLength) / 2
+        }
+
+        private fun distanceToSegment(x: Float, y: Float, x0: Float, y0: Float, x1: Float, y1: Float): Float {
+            val dx = x1 - x0
+            val dy = y1 - y0
+            val lengthSquared = dx * dx + dy * dy
+            if (lengthSquared == 0f) {
+                return distance(x, y, x0, y0)
+            }
+            val t = Math.max(0f, Math.min(1f, ((x - x0) * dx + (y - y0) * dy) / lengthSquared))
+            return distance(x, y, x0 + t * dx, y0 + t * dy)
+        }
+
+        private fun distance(x0: Float, y0: Float, x1: Float, y1: Float): Float {
+            return Math.hypot((x1 - x0).toDouble(), (y1 - y0).toDouble()).toFloat()
+        }
+    }
+
+    /** Identifies a simplification by the identity of the simplified path and its tolerance. */
+    private class CacheKey(private val pathData: PathData, private val tolerance: Float) {
+
+        override fun equals(other: Any?): Boolean {
+            return other is CacheKey && pathData === other.pathData && tolerance == other.tolerance
+        }
+
+        override fun hashCode(): Int {
+            return 31 * System.identityHashCode(pathData) + tolerance.hashCode()
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * Receives the drawing commands described by a [PathData] object. All coordinates are absolute,
+ * and relative, smooth, and arc commands have already been resolved by [PathDataUtils].
+ */
+internal interface PathSink {
+    fun moveTo(x: Float, y: Float)
+    fun lineTo(x: Float, y: Float)
+    // Only used for the zero-length line that PathDataUtils adds to each arc segment.
+    fun rLineTo(dx: Float, dy: Float)
+    fun quadTo(x1: Float, y1: Float, x2: Float, y2: Float)
+    fun cubicTo(x1: Float, y1: Float, x2: Float, y2: Float, x3: Float, y3: Float)
+    fun close()
+}
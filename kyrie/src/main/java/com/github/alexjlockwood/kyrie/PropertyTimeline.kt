@@ -1,25 +1,140 @@
 package com.github.alexjlockwood.kyrie
 
+import android.animation.TimeInterpolator
+import android.view.animation.LinearInterpolator
 import androidx.annotation.IntRange
+import com.github.alexjlockwood.kyrie.Animation.RepeatMode
 
 import java.util.ArrayList
+import java.util.IdentityHashMap
 
-internal class PropertyTimeline(private val drawable: KyrieDrawable) {
+/**
+ * Tracks the current play time of all of a [KyrieDrawable]'s animatable properties.
+ *
+ * Properties are registered while the drawable's layers are being created. Once all properties
+ * have been registered, [compile] flattens each property's animations into a set of parallel
+ * arrays (one entry per animation, referred to below as a "segment"), so that the timeline can be
+ * evaluated in a single pass over primitive arrays each time the play time changes. Float and int
+ * values are evaluated eagerly into value buffers, and the drawable is invalidated at most once
+ * per update, and only if at least one property's value has changed.
+ *
+ * Each property's value can only change during its "live" interval, which begins when its
+ * first non-instantaneous animation starts and ends when its last animation ends. As the play
+ * time moves forward, the timeline walks a list of properties sorted by live start time and
+ * only evaluates the properties whose live intervals have begun but haven't yet been evaluated
+ * past their end, so the cost of an update scales with the number of active properties rather
+ * than the total number of properties. Moving the play time backwards falls back to evaluating
+ * every property and rebuilding the active set.
+ *
+ * @param pixelsPerUnit An estimate of the number of pixels spanned by a single viewport unit when
+ * the drawable is rendered, used to prepare animations whose values are approximated.
+ * @param pathSimplificationTolerance The tolerance (in viewport units) used to simplify paths
+ * that aren't animated, or 0 if paths shouldn't be simplified.
+ */
+internal class PropertyTimeline(
+        private val drawable: KyrieDrawable,
+        val pixelsPerUnit: Float,
+        private val pathSimplificationTolerance: Float
+) {
 
-    private val properties = ArrayList<Property<*>>()
-    private val listener = object : Property.Listener {
-        override fun onCurrentPlayTimeChanged(property: Property<*>) {
-            drawable.invalidateSelf()
-        }
-    }
+    private val properties = ArrayList<AnimatableProperty<*>>()
+    private val propertyValueTypes = ArrayList<Int>()
+    private var isCompiled = false
 
     var totalDuration: Long = 0
         private set
 
+    /**
+     * The number of properties that have been registered so far. The properties registered by a
+     * layer's descendants occupy a contiguous range of slots.
+     */
+    val numProperties: Int
+        get() = properties.size
+
+    // Per-property data, indexed by property slot.
+    private var valueTypes = IntArray(0)
+    private var segmentOffsets = IntArray(0)
+    private var propertyTotalDurations = LongArray(0)
+    private var currentSegments = IntArray(0)
+    private var currentFractions = FloatArray(0)
+    private var floatValues = FloatArray(0)
+    private var intValues = IntArray(0)
+    private var versions = IntArray(0)
+    // Incremented each time any property's value changes.
+    private var latestVersion = 0
+
+    // Per-segment data, indexed by segment (each segment corresponds to a single animation).
+    private var segmentAnimations = emptyArray<Animation<*, *>>()
+    private var startTimes = LongArray(0)
+    private var durations = LongArray(0)
+    private var totalDurations = LongArray(0)
+    private var repeatCounts = LongArray(0)
+    private var isReversing = BooleanArray(0)
+    private var interpolatorIds = IntArray(0)
+    private var interpolators = emptyArray<TimeInterpolator>()
+
+    // The interval during which each property's value may change, indexed by property slot.
+    private var liveStartTimes = LongArray(0)
+    private var liveEndTimes = LongArray(0)
+    // Property slots sorted by live start time.
+    private var startOrder = IntArray(0)
+    // The index into startOrder of the next property to become active.
+    private var nextStartIndex = 0
+    // The slots of the properties that are currently live.
+    private var activeSlots = IntArray(0)
+    private var numActiveSlots = 0
+    private var lastPlayTime = 0L
+
+    /**
+     * Returns a [Property] that tracks the given list of animations. Properties consisting of a
+     * single constant animation are never registered with the timeline, as their values never
+     * change and thus never need to be updated when the current play time changes.
+     */
     fun <V> registerAnimatableProperty(animations: List<Animation<*, V>>): Property<V> {
-        val property = Property(animations)
+        if (isConstant(animations)) {
+            return ConstantProperty(animations[0].getAnimatedValue(1f))
+        }
+        return register(AnimatableProperty(this, properties.size, animations), VALUE_TYPE_OBJECT)
+    }
+
+    /** Same as [registerAnimatableProperty] except returns an unboxed [FloatProperty]. */
+    fun registerFloatProperty(animations: List<Animation<*, Float>>): FloatProperty {
+        if (isConstant(animations)) {
+            return ConstantFloatProperty(animations[0].getAnimatedFloatValue(1f))
+        }
+        return register(AnimatableFloatProperty(this, properties.size, animations), VALUE_TYPE_FLOAT)
+    }
+
+    /** Same as [registerAnimatableProperty] except returns an unboxed [IntProperty]. */
+    fun registerIntProperty(animations: List<Animation<*, Int>>): IntProperty {
+        if (isConstant(animations)) {
+            return ConstantIntProperty(animations[0].getAnimatedIntValue(1f))
+        }
+        return register(AnimatableIntProperty(this, properties.size, animations), VALUE_TYPE_INT)
+    }
+
+    /**
+     * Same as [registerAnimatableProperty] except paths that aren't animated are simplified
+     * using the timeline's path simplification tolerance. Animated paths are left alone, as
+     * simplifying them would change the commands that their animations interpolate between.
+     */
+    fun registerPathDataProperty(animations: List<Animation<*, PathData>>): Property<PathData> {
+        if (pathSimplificationTolerance > 0 && isConstant(animations)) {
+            return ConstantProperty(animations[0].getAnimatedValue(1f).simplify(pathSimplificationTolerance))
+        }
+        return registerAnimatableProperty(animations)
+    }
+
+    private fun isConstant(animations: List<Animation<*, *>>): Boolean {
+        return animations.size == 1 && animations[0].isConstant
+    }
+
+    private fun <P : AnimatableProperty<*>> register(property: P, valueType: Int): P {
+        if (isCompiled) {
+            throw IllegalStateException("Properties must be registered before the timeline is compiled")
+        }
         properties.add(property)
-        property.addListener(listener)
+        propertyValueTypes.add(valueType)
         if (totalDuration != Animation.INFINITE) {
             val currTotalDuration = property.totalDuration
             totalDuration = if (currTotalDuration == Animation.INFINITE) {
@@ -31,7 +146,313 @@ internal class PropertyTimeline(private val drawable: KyrieDrawable) {
         return property
     }
 
+    /**
+     * Flattens the registered properties' animations into the timeline's segment tables and
+     * evaluates the timeline at play time 0. Must be called once after all properties have
+     * been registered.
+     */
+    fun compile() {
+        if (isCompiled) {
+            throw IllegalStateException("The timeline has already been compiled")
+        }
+        isCompiled = true
+
+        val numProperties = properties.size
+        val animations = ArrayList<Animation<*, *>>()
+        properties.forEach { animations.addAll(it.animations) }
+        val numSegments = animations.size
+
+        valueTypes = IntArray(numProperties) { propertyValueTypes[it] }
+        segmentOffsets = IntArray(numProperties + 1)
+        propertyTotalDurations = LongArray(numProperties)
+        currentSegments = IntArray(numProperties)
+        currentFractions = FloatArray(numProperties)
+        floatValues = FloatArray(numProperties)
+        intValues = IntArray(numProperties)
+        versions = IntArray(numProperties)
+
+        segmentAnimations = animations.toTypedArray()
+        startTimes = LongArray(numSegments)
+        durations = LongArray(numSegments)
+        totalDurations = LongArray(numSegments)
+        repeatCounts = LongArray(numSegments)
+        isReversing = BooleanArray(numSegments)
+        interpolatorIds = IntArray(numSegments)
+
+        val interpolatorList = ArrayList<TimeInterpolator>()
+        val interpolatorIdMap = IdentityHashMap<TimeInterpolator, Int>()
+        var segment = 0
+        for (slot in 0 until numProperties) {
+            val property = properties[slot]
+            segmentOffsets[slot] = segment
+            propertyTotalDurations[slot] = property.totalDuration
+            // Ensure the first update always evaluates the property.
+            currentSegments[slot] = -1
+            for (animation in property.animations) {
+                startTimes[segment] = animation.startDelay
+                durations[segment] = animation.duration
+                totalDurations[segment] = animation.totalDuration
+                repeatCounts[segment] = animation.repeatCount
+                isReversing[segment] = animation.repeatMode == RepeatMode.REVERSE
+                // Bake expensive interpolators into lookup tables up front.
+                val interpolator = BakedInterpolator.bake(animation.interpolator)
+                interpolatorIds[segment] = if (interpolator == null || interpolator is LinearInterpolator) {
+                    LINEAR_INTERPOLATOR_ID
+                } else {
+                    interpolatorIdMap.getOrPut(interpolator) {
+                        interpolatorList.add(interpolator)
+                        interpolatorList.size - 1
+                    }
+                }
+                segment++
+            }
+        }
+        segmentOffsets[numProperties] = segment
+        interpolators = interpolatorList.toTypedArray()
+
+        liveStartTimes = LongArray(numProperties) { getLiveStartTime(it) }
+        liveEndTimes = LongArray(numProperties) {
+            val totalDuration = propertyTotalDurations[it]
+            if (totalDuration == Animation.INFINITE) Long.MAX_VALUE else totalDuration
+        }
+        startOrder = (0 until numProperties).sortedBy { liveStartTimes[it] }.toIntArray()
+        activeSlots = IntArray(numProperties)
+
+        seek(0)
+    }
+
+    /**
+     * Returns the earliest play time at which the given property's value may start to change, or
+     * [Long.MAX_VALUE] if it never changes. A property whose first animation is instantaneous
+     * (i.e. its builder-supplied initial value) holds that value until its second animation starts.
+     */
+    private fun getLiveStartTime(slot: Int): Long {
+        val firstSegment = segmentOffsets[slot]
+        if (durations[firstSegment] != 0L) {
+            return 0
+        }
+        val secondSegment = firstSegment + 1
+        return if (secondSegment < segmentOffsets[slot + 1]) startTimes[secondSegment] else Long.MAX_VALUE
+    }
+
     fun setCurrentPlayTime(@IntRange(from = 0) currentPlayTime: Long) {
-        properties.forEach { it.setCurrentPlayTime(currentPlayTime) }
+        if (update(currentPlayTime)) {
+            drawable.invalidateSelf()
+        }
+    }
+
+    /** @return The index of the animation that is currently active for the given property. */
+    fun getCurrentAnimationIndex(slot: Int): Int {
+        return currentSegments[slot] - segmentOffsets[slot]
+    }
+
+    /** @return The interpolated fraction into the given property's currently active animation. */
+    fun getCurrentFraction(slot: Int): Float {
+        return currentFractions[slot]
+    }
+
+    /** @return The current value of the given float property. */
+    fun getFloatValue(slot: Int): Float {
+        return floatValues[slot]
+    }
+
+    /** @return The current value of the given int property. */
+    fun getIntValue(slot: Int): Int {
+        return intValues[slot]
+    }
+
+    /**
+     * @return A number that increases each time the given property's value changes. Versions are
+     * assigned from a single counter, so the property whose value changed most recently has the
+     * greatest version.
+     */
+    fun getVersion(slot: Int): Int {
+        return versions[slot]
+    }
+
+    /** @return The greatest version of the properties in the given range of slots. */
+    fun getLatestVersion(startSlot: Int, endSlot: Int): Int {
+        val versions = versions
+        var latestVersion = 0
+        for (slot in startSlot until endSlot) {
+            latestVersion = Math.max(latestVersion, versions[slot])
+        }
+        return latestVersion
+    }
+
+    /**
+     * Evaluates the properties that are live at the given play time.
+     *
+     * @return true if at least one property's value has changed.
+     */
+    private fun update(currentPlayTime: Long): Boolean {
+        if (currentPlayTime < lastPlayTime) {
+            return seek(currentPlayTime)
+        }
+        lastPlayTime = currentPlayTime
+        // Activate the properties whose live intervals have begun since the last update.
+        val startOrder = startOrder
+        while (nextStartIndex < startOrder.size && liveStartTimes[startOrder[nextStartIndex]] <= currentPlayTime) {
+            activeSlots[numActiveSlots++] = startOrder[nextStartIndex++]
+        }
+        var isChanged = false
+        var i = 0
+        while (i < numActiveSlots) {
+            val slot = activeSlots[i]
+            if (updateProperty(slot, currentPlayTime)) {
+                isChanged = true
+            }
+            if (liveEndTimes[slot] <= currentPlayTime) {
+                // The property has been evaluated at its end time, so its value
+                // won't change again unless the play time moves backwards.
+                activeSlots[i] = activeSlots[--numActiveSlots]
+            } else {
+                i++
+            }
+        }
+        return isChanged
+    }
+
+    /**
+     * Evaluates every property at the given play time and rebuilds the set of active properties.
+     *
+     * @return true if at least one property's value has changed.
+     */
+    private fun seek(currentPlayTime: Long): Boolean {
+        lastPlayTime = currentPlayTime
+        var isChanged = false
+        for (slot in 0 until valueTypes.size) {
+            if (updateProperty(slot, currentPlayTime)) {
+                isChanged = true
+            }
+        }
+        numActiveSlots = 0
+        nextStartIndex = 0
+        val startOrder = startOrder
+        while (nextStartIndex < startOrder.size && liveStartTimes[startOrder[nextStartIndex]] <= currentPlayTime) {
+            val slot = startOrder[nextStartIndex++]
+            if (currentPlayTime < liveEndTimes[slot]) {
+                activeSlots[numActiveSlots++] = slot
+            }
+        }
+        return isChanged
+    }
+
+    private fun updateProperty(slot: Int, currentPlayTime: Long): Boolean {
+        var playTime = currentPlayTime
+        val propertyTotalDuration = propertyTotalDurations[slot]
+        if (playTime < 0) {
+            playTime = 0
+        } else if (propertyTotalDuration != Animation.INFINITE && propertyTotalDuration < playTime) {
+            playTime = propertyTotalDuration
+        }
+        val segment = findSegment(slot, playTime)
+        val fraction = getInterpolatedFraction(segment, playTime)
+        if (segment == currentSegments[slot] && fraction == currentFractions[slot]) {
+            return false
+        }
+        currentSegments[slot] = segment
+        currentFractions[slot] = fraction
+        when (valueTypes[slot]) {
+            VALUE_TYPE_FLOAT -> {
+                val value = segmentAnimations[segment].getAnimatedFloatValue(fraction)
+                if (value == floatValues[slot]) {
+                    return false
+                }
+                floatValues[slot] = value
+            }
+            VALUE_TYPE_INT -> {
+                val value = segmentAnimations[segment].getAnimatedIntValue(fraction)
+                if (value == intValues[slot]) {
+                    return false
+                }
+                intValues[slot] = value
+            }
+        }
+        versions[slot] = ++latestVersion
+        return true
+    }
+
+    /**
+     * Returns the last of the property's segments that starts at or before the given play time,
+     * or the property's first segment if none do. The search begins at the property's current
+     * segment, so it takes constant time when the play time moves forward steadily.
+     */
+    private fun findSegment(slot: Int, playTime: Long): Int {
+        val firstSegment = segmentOffsets[slot]
+        val lastSegment = segmentOffsets[slot + 1] - 1
+        var segment = currentSegments[slot]
+        if (segment < firstSegment) {
+            segment = firstSegment
+        }
+        while (segment < lastSegment && startTimes[segment + 1] <= playTime) {
+            segment++
+        }
+        while (segment > firstSegment && startTimes[segment] > playTime) {
+            segment--
+        }
+        return segment
+    }
+
+    /**
+     * Returns the progress into the given segment between 0 and 1. This does not take into
+     * account any interpolation that the segment's animation may have.
+     */
+    private fun getLinearFraction(segment: Int, currentPlayTime: Long): Float {
+        val startTime = startTimes[segment].toFloat()
+        val duration = durations[segment].toFloat()
+        if (duration == 0f) {
+            return 1f
+        }
+        val totalDuration = totalDurations[segment]
+        var playTime = currentPlayTime
+        if (totalDuration != Animation.INFINITE) {
+            // Don't let the current play time exceed the animation's total duration if it isn't infinite.
+            playTime = Math.min(playTime, totalDuration)
+        }
+        val fraction = (playTime - startTime) / duration
+        val currentIteration = getCurrentIteration(fraction)
+        val repeatCount = repeatCounts[segment]
+        var currentFraction = fraction - currentIteration
+        if (0 < currentIteration
+                && isReversing[segment]
+                && (currentIteration < repeatCount + 1 || repeatCount == Animation.INFINITE)) {
+            // TODO: when reversing, check if currentIteration % 2 == 0 instead
+            if (currentIteration % 2 != 0) {
+                currentFraction = 1 - currentFraction
+            }
+        }
+        return currentFraction
+    }
+
+    /**
+     * Takes the value of [getLinearFraction] and interpolates it with the segment's interpolator.
+     */
+    private fun getInterpolatedFraction(segment: Int, currentPlayTime: Long): Float {
+        val fraction = getLinearFraction(segment, currentPlayTime)
+        val interpolatorId = interpolatorIds[segment]
+        if (interpolatorId == LINEAR_INTERPOLATOR_ID) {
+            return fraction
+        }
+        return interpolators[interpolatorId].getInterpolation(fraction)
+    }
+
+    companion object {
+        private const val VALUE_TYPE_OBJECT = 0
+        private const val VALUE_TYPE_FLOAT = 1
+        private const val VALUE_TYPE_INT = 2
+
+        private const val LINEAR_INTERPOLATOR_ID = -1
+
+        private fun getCurrentIteration(fraction: Float): Int {
+            // If the overall fraction is a positive integer, we consider the current iteration to be
+            // complete. In other words, the fraction for the current iteration would be 1, and the
+            // current iteration would be overall fraction - 1.
+            var iteration = Math.floor(fraction.toDouble()).toFloat()
+            if (fraction == iteration && fraction > 0) {
+                iteration--
+            }
+            return iteration.toInt()
+        }
     }
 }
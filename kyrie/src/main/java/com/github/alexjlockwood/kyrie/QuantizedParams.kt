@@ -0,0 +1,61 @@
+package com.github.alexjlockwood.kyrie
+
+/**
+ * The params of a compact [PathData] object, stored as 16-bit fixed point values with a single
+ * scale shared by the entire path, along with 16-bit param offsets. This takes half the memory of
+ * storing the params and their offsets as floats and ints, at the cost of decoding the params
+ * each time the path is drawn.
+ */
+internal class QuantizedParams private constructor(
+        private val offsets: CharArray,
+        private val values: ShortArray,
+        private val scale: Float
+) {
+
+    /** @return The offset of the first param of the command at the given index. */
+    fun getOffset(index: Int): Int {
+        return offsets[index].toInt()
+    }
+
+    /** Decodes the params in the range `[start, end)` into the given array, starting at index 0. */
+    fun decode(start: Int, end: Int, out: FloatArray) {
+        val values = values
+        val scale = scale
+        for (i in start until end) {
+            out[i - start] = values[i] * scale
+        }
+    }
+
+    fun decodeOffsets(): IntArray {
+        return IntArray(offsets.size) { offsets[it].toInt() }
+    }
+
+    fun decodeParams(): FloatArray {
+        return FloatArray(values.size).also { decode(0, values.size, it) }
+    }
+
+    companion object {
+
+        /**
+         * @return The quantized form of the given params, or null if they can't be quantized
+         * (i.e. because there are too many params or they aren't all finite).
+         */
+        fun encode(paramOffsets: IntArray, params: FloatArray): QuantizedParams? {
+            if (params.size > Character.MAX_VALUE.toInt()) {
+                return null
+            }
+            var maxMagnitude = 0f
+            for (param in params) {
+                if (param.isNaN() || param.isInfinite()) {
+                    return null
+                }
+                maxMagnitude = Math.max(maxMagnitude, Math.abs(param))
+            }
+            // Zero is encoded exactly, so arc flags keep their meaning.
+            val scale = if (maxMagnitude == 0f) 1f else maxMagnitude / Short.MAX_VALUE
+            val offsets = CharArray(paramOffsets.size) { paramOffsets[it].toChar() }
+            val values = ShortArray(params.size) { Math.round(params[it] / scale).toShort() }
+            return QuantizedParams(offsets, values, scale)
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.github.alexjlockwood.kyrie
 
+import android.graphics.Canvas
+import android.graphics.Paint
 import android.graphics.Path
+import android.graphics.PathMeasure
 import android.graphics.RectF
 import androidx.annotation.FloatRange
+import androidx.annotation.Size
 
 /** A [Node] that paints a rectangle. */
 class RectangleNode private constructor(
@@ -30,6 +34,7 @@ class RectangleNode private constructor(
         strokeDashOffset: List<Animation<*, Float>>,
         fillType: FillType,
         isStrokeScaling: Boolean,
+        isStrokeOutlineCached: Boolean,
         private val x: List<Animation<*, Float>>,
         private val y: List<Animation<*, Float>>,
         private val width: List<Animation<*, Float>>,
@@ -60,7 +65,8 @@ class RectangleNode private constructor(
         strokeDashArray,
         strokeDashOffset,
         fillType,
-        isStrokeScaling
+        isStrokeScaling,
+        isStrokeOutlineCached
 ) {
 
     // <editor-fold desc="Layer">
@@ -70,25 +76,94 @@ class RectangleNode private constructor(
     }
 
     internal class RectangleLayer(timeline: PropertyTimeline, node: RectangleNode) : RenderNode.RenderLayer(timeline, node) {
-        private val x = registerAnimatableProperty(node.x)
-        private val y = registerAnimatableProperty(node.y)
-        private val width = registerAnimatableProperty(node.width)
-        private val height = registerAnimatableProperty(node.height)
-        private val cornerRadiusX = registerAnimatableProperty(node.cornerRadiusX)
-        private val cornerRadiusY = registerAnimatableProperty(node.cornerRadiusY)
+        private val x = registerFloatProperty(node.x)
+        private val y = registerFloatProperty(node.y)
+        private val width = registerFloatProperty(node.width)
+        private val height = registerFloatProperty(node.height)
+        private val cornerRadiusX = registerFloatProperty(node.cornerRadiusX)
+        private val cornerRadiusY = registerFloatProperty(node.cornerRadiusY)
 
         private val tempRect = RectF()
 
+        @Size(value = 10)
+        private val tempCorners = FloatArray(10)
+
         override fun onInitPath(outPath: Path) {
-            val l = x.animatedValue
-            val t = y.animatedValue
-            val r = l + width.animatedValue
-            val b = t + height.animatedValue
-            val rx = cornerRadiusX.animatedValue
-            val ry = cornerRadiusY.animatedValue
+            val l = x.floatValue
+            val t = y.floatValue
+            val r = l + width.floatValue
+            val b = t + height.floatValue
+            val rx = cornerRadiusX.floatValue
+            val ry = cornerRadiusY.floatValue
             tempRect.set(l, t, r, b)
             outPath.addRoundRect(tempRect, rx, ry, Path.Direction.CW)
         }
+
+        override fun getGeometryVersion(): Int {
+            return x.version + y.version + width.version + height.version + cornerRadiusX.version + cornerRadiusY.version
+        }
+
+        override fun canTrimPathAnalytically(): Boolean {
+            // Rounded corners are elliptical arcs, which are left to PathMeasure, as are all
+            // rectangles if the platform's start corner couldn't be determined.
+            val hasRoundedCorners = cornerRadiusX.floatValue > 0 && cornerRadiusY.floatValue > 0
+            return !hasRoundedCorners && width.floatValue > 0 && height.floatValue > 0 && sharpRectStartCorner >= 0
+        }
+
+        override fun onAddTrimmedSegment(startFraction: Float, endFraction: Float, outPath: Path) {
+            val l = x.floatValue
+            val t = y.floatValue
+            val r = l + width.floatValue
+            val b = t + height.floatValue
+            // Traverse the edges clockwise, starting from the same corner as Path#addRoundRect.
+            val corners = tempCorners
+            for (i in 0..4) {
+                val corner = (sharpRectStartCorner + i) % 4
+                corners[i * 2] = if (corner == 0 || corner == 3) l else r
+                corners[i * 2 + 1] = if (corner == 0 || corner == 1) t else b
+            }
+
+            val perimeter = 2 * (r - l + b - t)
+            val start = startFraction * perimeter
+            val end = endFraction * perimeter
+            var edgeStart = 0f
+            var isFirstEdge = true
+            for (i in 0 until 4) {
+                val x0 = corners[i * 2]
+                val y0 = corners[i * 2 + 1]
+                val x1 = corners[i * 2 + 2]
+                val y1 = corners[i * 2 + 3]
+                val edgeLength = Math.abs(x1 - x0) + Math.abs(y1 - y0)
+                val edgeEnd = edgeStart + edgeLength
+                if (start < edgeEnd && end > edgeStart) {
+                    if (isFirstEdge) {
+                        val fraction = (Math.max(start, edgeStart) - edgeStart) / edgeLength
+                        outPath.moveTo(x0 + (x1 - x0) * fraction, y0 + (y1 - y0) * fraction)
+                        isFirstEdge = false
+                    }
+                    val fraction = (Math.min(end, edgeEnd) - edgeStart) / edgeLength
+                    outPath.lineTo(x0 + (x1 - x0) * fraction, y0 + (y1 - y0) * fraction)
+                }
+                edgeStart = edgeEnd
+            }
+        }
+
+        override fun canDrawPrimitive(): Boolean {
+            return width.floatValue > 0 && height.floatValue > 0
+        }
+
+        override fun onDrawPrimitive(canvas: Canvas, paint: Paint) {
+            val l = x.floatValue
+            val t = y.floatValue
+            val rx = cornerRadiusX.floatValue
+            val ry = cornerRadiusY.floatValue
+            tempRect.set(l, t, l + width.floatValue, t + height.floatValue)
+            if (rx > 0 && ry > 0) {
+                canvas.drawRoundRect(tempRect, rx, ry, paint)
+            } else {
+                canvas.drawRect(tempRect, paint)
+            }
+        }
     }
 
     // </editor-fold>
@@ -226,6 +301,7 @@ class RectangleNode private constructor(
                     strokeDashOffset,
                     fillType,
                     isScalingStroke,
+                    isStrokeOutlineCached,
                     x,
                     y,
                     width,
@@ -240,6 +316,43 @@ class RectangleNode private constructor(
 
     companion object {
 
+        /**
+         * The corner at which Path#addRoundRect starts a clockwise rectangle without rounded
+         * corners (0, 1, 2, and 3 being the top left, top right, bottom right, and bottom left
+         * corners), or -1 if it couldn't be determined. The start corner depends on the
+         * platform's version of Skia (newer versions start at the bottom left corner, older
+         * versions start at the top left corner), so it's measured once at runtime.
+         */
+        private val sharpRectStartCorner: Int by lazy { findSharpRectStartCorner() }
+
+        private fun findSharpRectStartCorner(): Int {
+            val path = Path()
+            path.addRoundRect(RectF(0f, 0f, 2f, 2f), 0f, 0f, Path.Direction.CW)
+            val pathMeasure = PathMeasure(path, false)
+            val start = FloatArray(2)
+            val middle = FloatArray(2)
+            if (!pathMeasure.getPosTan(0f, start, null) || !pathMeasure.getPosTan(1f, middle, null)) {
+                return -1
+            }
+            for (corner in 0 until 4) {
+                val next = (corner + 1) % 4
+                val x0 = if (corner == 0 || corner == 3) 0f else 2f
+                val y0 = if (corner == 0 || corner == 1) 0f else 2f
+                val x1 = if (next == 0 || next == 3) 0f else 2f
+                val y1 = if (next == 0 || next == 1) 0f else 2f
+                // The first edge must also proceed clockwise towards the next corner.
+                if (isClose(start[0], x0) && isClose(start[1], y0)
+                        && isClose(middle[0], (x0 + x1) / 2) && isClose(middle[1], (y0 + y1) / 2)) {
+                    return corner
+                }
+            }
+            return -1
+        }
+
+        private fun isClose(a: Float, b: Float): Boolean {
+            return Math.abs(a - b) < 1e-3f
+        }
+
         @JvmStatic
         fun builder(): Builder {
             return Builder()
@@ -14,6 +14,12 @@ import android.graphics.RadialGradient
 import android.graphics.SweepGradient
 import androidx.annotation.ColorInt
 import androidx.annotation.FloatRange
+import androidx.annotation.Size
+
+/** Transforms that scale their axes within this fraction of each other are considered uniform. */
+private const val UNIFORM_SCALE_TOLERANCE = 1e-3f
+
+private val IDENTITY_MATRIX = Matrix()
 
 /** Abstract base [Node] for all node types that paint to the canvas. */
 abstract class RenderNode internal constructor(
@@ -40,7 +46,8 @@ abstract class RenderNode internal constructor(
         private val strokeDashArray: List<Animation<*, FloatArray>>,
         private val strokeDashOffset: List<Animation<*, Float>>,
         private val fillType: FillType,
-        private val isScalingStroke: Boolean
+        private val isScalingStroke: Boolean,
+        private val isStrokeOutlineCached: Boolean
 ) : TransformNode(rotation, pivotX, pivotY, scaleX, scaleY, translateX, translateY) {
 
     // <editor-fold desc="Layer">
@@ -48,23 +55,24 @@ abstract class RenderNode internal constructor(
     abstract override fun toLayer(timeline: PropertyTimeline): RenderLayer
 
     internal abstract class RenderLayer(timeline: PropertyTimeline, node: RenderNode) : TransformNode.TransformLayer(timeline, node) {
-        private val fillColor = registerAnimatableProperty(node.fillColor)
+        private val fillColor = registerIntProperty(node.fillColor)
         private val fillColorComplex = node.fillColorComplex
-        private val fillAlpha = registerAnimatableProperty(node.fillAlpha)
-        private val strokeColor = registerAnimatableProperty(node.strokeColor)
+        private val fillAlpha = registerFloatProperty(node.fillAlpha)
+        private val strokeColor = registerIntProperty(node.strokeColor)
         private val strokeColorComplex = node.strokeColorComplex
-        private val strokeAlpha = registerAnimatableProperty(node.strokeAlpha)
-        private val strokeWidth = registerAnimatableProperty(node.strokeWidth)
-        private val trimPathStart = registerAnimatableProperty(node.trimPathStart)
-        private val trimPathEnd = registerAnimatableProperty(node.trimPathEnd)
-        private val trimPathOffset = registerAnimatableProperty(node.trimPathOffset)
+        private val strokeAlpha = registerFloatProperty(node.strokeAlpha)
+        private val strokeWidth = registerFloatProperty(node.strokeWidth)
+        private val trimPathStart = registerFloatProperty(node.trimPathStart)
+        private val trimPathEnd = registerFloatProperty(node.trimPathEnd)
+        private val trimPathOffset = registerFloatProperty(node.trimPathOffset)
         private val strokeLineCap = node.strokeLineCap
         private val strokeLineJoin = node.strokeLineJoin
-        private val strokeMiterLimit = registerAnimatableProperty(node.strokeMiterLimit)
+        private val strokeMiterLimit = registerFloatProperty(node.strokeMiterLimit)
         private val strokeDashArray = registerAnimatableProperty(node.strokeDashArray)
-        private val strokeDashOffset = registerAnimatableProperty(node.strokeDashOffset)
+        private val strokeDashOffset = registerFloatProperty(node.strokeDashOffset)
         private val fillType = node.fillType
         private val isStrokeScaling = node.isScalingStroke
+        private val isStrokeOutlineCached = node.isStrokeOutlineCached
 
         private val tempMatrix = Matrix()
         private val tempPath = Path()
@@ -73,9 +81,59 @@ abstract class RenderNode internal constructor(
         private var tempFillPaint: Paint? = null
         private var tempPathMeasure: PathMeasure? = null
         private var tempStrokeDashArray: FloatArray? = null
+        private val tempScaleMatrix = Matrix()
+
+        // The cached outline of the layer's stroke, along with the state it was computed from.
+        private var strokeOutline: Path? = null
+        private var strokeOutlineGeometryVersion = 0
+        private var strokeOutlineStrokeVersion = 0
+        private var strokeOutlineScale = 0f
+        private var strokeOutlineStrokeScaleFactor = 0f
+
+        @Size(value = 4)
+        private val tempUnitVectors = FloatArray(4)
 
         abstract fun onInitPath(outPath: Path)
 
+        /**
+         * Returns the sum of the versions of the properties that [onInitPath] reads, which
+         * changes each time the layer's geometry changes.
+         */
+        abstract fun getGeometryVersion(): Int
+
+        /**
+         * Returns true if the layer's shape can currently be drawn using [onDrawPrimitive]
+         * instead of being built as a path. Shapes are only drawn as primitives while they
+         * aren't trimmed or dashed.
+         */
+        open fun canDrawPrimitive(): Boolean {
+            return false
+        }
+
+        /**
+         * Draws the layer's shape using one of the canvas' primitive drawing methods (i.e.
+         * [Canvas.drawCircle]), which avoids building and tessellating a path. The canvas has
+         * already been transformed into the layer's coordinate space, and the paint is either the
+         * layer's fill paint or its stroke paint.
+         */
+        open fun onDrawPrimitive(canvas: Canvas, paint: Paint) {}
+
+        /**
+         * Returns true if the layer's shape can currently be trimmed using [onAddTrimmedSegment]
+         * instead of measuring its path with a [PathMeasure].
+         */
+        open fun canTrimPathAnalytically(): Boolean {
+            return false
+        }
+
+        /**
+         * Adds the portion of the layer's shape that lies between the given fractions of its
+         * length to the given path as a new contour, starting from the same point and proceeding
+         * in the same direction as the path built by [onInitPath]. The fractions satisfy
+         * `0 <= startFraction < endFraction <= 1`.
+         */
+        open fun onAddTrimmedSegment(startFraction: Float, endFraction: Float, outPath: Path) {}
+
         override fun onDraw(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
             val matrixScale = getMatrixScale(parentMatrix)
             if (matrixScale == 0f) {
@@ -88,33 +146,175 @@ abstract class RenderNode internal constructor(
             if (scaleX != 1f || scaleY != 1f) {
                 tempMatrix.postScale(scaleX, scaleY)
             }
+            val strokeScaleFactor = Math.min(scaleX, scaleY) * if (isStrokeScaling) matrixScale else 1f
+
+            // Drawing under the layer's transform avoids copying the path into device space, but
+            // strokes are always drawn with a uniform width, so strokes can only be drawn this way
+            // if the transform scales both axes by the same amount.
+            val uniformScale = getUniformScale(tempMatrix)
+            if (uniformScale > 0 || !willDrawStroke()) {
+                drawConcat(canvas, strokeScaleFactor, uniformScale)
+                return
+            }
 
             tempPath.reset()
-            onInitPath(tempPath)
-            applyTrimPathIfNeeded(tempPath)
+            initPath(tempPath)
             tempRenderPath.reset()
             tempRenderPath.addPath(tempPath, tempMatrix)
             drawFillIfNeeded(canvas, tempRenderPath, tempMatrix)
-            val strokeScaleFactor = Math.min(scaleX, scaleY) * if (isStrokeScaling) matrixScale else 1f
             drawStrokeIfNeeded(canvas, tempRenderPath, tempMatrix, strokeScaleFactor)
         }
 
-        private fun applyTrimPathIfNeeded(outPath: Path) {
-            val trimPathStart = this.trimPathStart.animatedValue
-            val trimPathEnd = this.trimPathEnd.animatedValue
-            val trimPathOffset = this.trimPathOffset.animatedValue
+        private fun isPrimitiveDrawable(): Boolean {
+            return trimPathStart.floatValue == 0f
+                    && trimPathEnd.floatValue == 1f
+                    && strokeDashArray.animatedValue.isEmpty()
+                    && canDrawPrimitive()
+        }
+
+        /**
+         * Concatenates the layer's transform with the canvas' matrix and draws the layer in its own
+         * coordinate space. The stroke width and dash intervals are divided by the transform's
+         * uniform scale so that they're the same as when the path is transformed into device
+         * space, and gradients are specified in the layer's coordinate space, which is now the
+         * canvas' coordinate space.
+         */
+        private fun drawConcat(canvas: Canvas, strokeScaleFactor: Float, uniformScale: Float) {
+            val saveCount = canvas.save()
+            canvas.concat(tempMatrix)
+            val localStrokeScaleFactor = strokeScaleFactor / uniformScale
+            if (isPrimitiveDrawable()) {
+                getFillPaint(IDENTITY_MATRIX)?.let { onDrawPrimitive(canvas, it) }
+                getStrokePaint(IDENTITY_MATRIX, localStrokeScaleFactor)?.let { onDrawPrimitive(canvas, it) }
+            } else if (isStrokeOutlineCached && willDrawStroke()) {
+                val isStrokeOutlineStale = isStrokeOutlineStale(strokeScaleFactor, uniformScale)
+                if (isStrokeOutlineStale || willDrawFill()) {
+                    tempPath.reset()
+                    initPath(tempPath)
+                }
+                drawFillIfNeeded(canvas, tempPath, IDENTITY_MATRIX)
+                drawStrokeOutline(canvas, strokeScaleFactor, uniformScale, isStrokeOutlineStale)
+            } else {
+                tempPath.reset()
+                initPath(tempPath)
+                drawFillIfNeeded(canvas, tempPath, IDENTITY_MATRIX)
+                drawStrokeIfNeeded(canvas, tempPath, IDENTITY_MATRIX, localStrokeScaleFactor)
+            }
+            canvas.restoreToCount(saveCount)
+        }
+
+        private fun isStrokeOutlineStale(strokeScaleFactor: Float, uniformScale: Float): Boolean {
+            return strokeOutline == null
+                    || strokeOutlineGeometryVersion != getTrimmedGeometryVersion()
+                    || strokeOutlineStrokeVersion != getStrokeVersion()
+                    || strokeOutlineScale != uniformScale
+                    || strokeOutlineStrokeScaleFactor != strokeScaleFactor
+        }
+
+        private fun getTrimmedGeometryVersion(): Int {
+            return getGeometryVersion() + trimPathStart.version + trimPathEnd.version + trimPathOffset.version
+        }
+
+        private fun getStrokeVersion(): Int {
+            return strokeWidth.version + strokeMiterLimit.version + strokeDashArray.version + strokeDashOffset.version
+        }
+
+        /**
+         * Draws the layer's stroke by filling its cached outline, recomputing the outline from
+         * the layer's current path first if it is stale. The canvas must already be transformed
+         * into the layer's coordinate space.
+         */
+        private fun drawStrokeOutline(canvas: Canvas, strokeScaleFactor: Float, uniformScale: Float, isStale: Boolean) {
+            // Paint#getFillPath flattens curves at a fixed resolution, so the outline is computed
+            // in the layer's coordinate space scaled up to the size that it's drawn at.
+            tempScaleMatrix.setScale(uniformScale, uniformScale)
+            val paint = getStrokePaint(tempScaleMatrix, strokeScaleFactor)!!
+            var strokeOutline = this.strokeOutline
+            if (strokeOutline == null) {
+                strokeOutline = Path()
+                this.strokeOutline = strokeOutline
+            }
+            if (isStale) {
+                tempRenderPath.reset()
+                tempRenderPath.addPath(tempPath, tempScaleMatrix)
+                strokeOutline.reset()
+                paint.getFillPath(tempRenderPath, strokeOutline)
+                strokeOutlineGeometryVersion = getTrimmedGeometryVersion()
+                strokeOutlineStrokeVersion = getStrokeVersion()
+                strokeOutlineScale = uniformScale
+                strokeOutlineStrokeScaleFactor = strokeScaleFactor
+            }
+            canvas.scale(1 / uniformScale, 1 / uniformScale)
+            // The outline already includes the stroke's dashes.
+            paint.style = Paint.Style.FILL
+            paint.pathEffect = null
+            canvas.drawPath(strokeOutline, paint)
+            paint.style = Paint.Style.STROKE
+        }
+
+        /**
+         * @return The scale applied by the given matrix if it scales both axes by the same amount
+         * and doesn't skew them, or 0 otherwise.
+         */
+        private fun getUniformScale(matrix: Matrix): Float {
+            val unitVectors = tempUnitVectors
+            unitVectors[0] = 1f
+            unitVectors[1] = 0f
+            unitVectors[2] = 0f
+            unitVectors[3] = 1f
+            matrix.mapVectors(unitVectors)
+            val scaleX = Math.hypot(unitVectors[0].toDouble(), unitVectors[1].toDouble()).toFloat()
+            val scaleY = Math.hypot(unitVectors[2].toDouble(), unitVectors[3].toDouble()).toFloat()
+            val dotProduct = unitVectors[0] * unitVectors[2] + unitVectors[1] * unitVectors[3]
+            val tolerance = UNIFORM_SCALE_TOLERANCE * Math.max(scaleX, scaleY)
+            if (Math.abs(scaleX - scaleY) > tolerance || Math.abs(dotProduct) > tolerance * scaleX) {
+                return 0f
+            }
+            return scaleX
+        }
+
+        private fun initPath(outPath: Path) {
+            val trimPathStart = this.trimPathStart.floatValue
+            val trimPathEnd = this.trimPathEnd.floatValue
+            val trimPathOffset = this.trimPathOffset.floatValue
             if (trimPathStart == 0f && trimPathEnd == 1f) {
+                onInitPath(outPath)
                 return
             }
-            var start = (trimPathStart + trimPathOffset) % 1f
-            var end = (trimPathEnd + trimPathOffset) % 1f
+            val start = (trimPathStart + trimPathOffset) % 1f
+            val end = (trimPathEnd + trimPathOffset) % 1f
+            if (canTrimPathAnalytically()) {
+                if (start > end) {
+                    addTrimmedSegment(start, 1f, outPath)
+                    addTrimmedSegment(0f, end, outPath)
+                } else {
+                    addTrimmedSegment(start, end, outPath)
+                }
+            } else {
+                onInitPath(outPath)
+                applyTrimPath(start, end, outPath)
+            }
+            // Required for Android 4.4 and earlier.
+            outPath.rLineTo(0f, 0f)
+        }
+
+        private fun addTrimmedSegment(startFraction: Float, endFraction: Float, outPath: Path) {
+            // Clamp the fractions and skip empty segments, just like PathMeasure#getSegment does.
+            val start = Math.max(0f, startFraction)
+            val end = Math.min(1f, endFraction)
+            if (start < end) {
+                onAddTrimmedSegment(start, end, outPath)
+            }
+        }
+
+        private fun applyTrimPath(startFraction: Float, endFraction: Float, outPath: Path) {
             if (tempPathMeasure == null) {
                 tempPathMeasure = PathMeasure()
             }
             tempPathMeasure!!.setPath(outPath, false)
             val len = tempPathMeasure!!.length
-            start *= len
-            end *= len
+            val start = startFraction * len
+            val end = endFraction * len
             outPath.reset()
             if (start > end) {
                 tempPathMeasure!!.getSegment(start, len, outPath, true)
@@ -122,16 +322,26 @@ abstract class RenderNode internal constructor(
             } else {
                 tempPathMeasure!!.getSegment(start, end, outPath, true)
             }
-            // Required for Android 4.4 and earlier.
-            outPath.rLineTo(0f, 0f)
         }
 
         private fun drawFillIfNeeded(canvas: Canvas, path: Path, localMatrix: Matrix) {
+            val paint = getFillPaint(localMatrix) ?: return
+            path.fillType = getPaintFillType(fillType)
+            canvas.drawPath(path, paint)
+        }
+
+        private fun willDrawFill(): Boolean {
             val fillColorComplex = fillColorComplex
-            val fillColor = this.fillColor.animatedValue
-            if ((fillColorComplex == null || !fillColorComplex.willDraw()) && fillColor == Color.TRANSPARENT) {
-                return
+            return (fillColorComplex != null && fillColorComplex.willDraw()) || fillColor.intValue != Color.TRANSPARENT
+        }
+
+        /** @return The paint used to fill the layer's shape, or null if it isn't filled. */
+        private fun getFillPaint(localMatrix: Matrix): Paint? {
+            if (!willDrawFill()) {
+                return null
             }
+            val fillColorComplex = fillColorComplex
+            val fillColor = this.fillColor.intValue
             if (tempFillPaint == null) {
                 tempFillPaint = Paint()
                 tempFillPaint!!.style = Paint.Style.FILL
@@ -142,30 +352,40 @@ abstract class RenderNode internal constructor(
                 val shader = fillColorComplex.shader!!
                 shader.setLocalMatrix(localMatrix)
                 paint.shader = shader
-                paint.alpha = Math.round(fillAlpha.animatedValue * 255f)
+                paint.alpha = Math.round(fillAlpha.floatValue * 255f)
             } else {
                 paint.shader = null
                 paint.alpha = 255
                 paint.color = if (fillColorComplex != null) {
-                    applyAlpha(fillColorComplex.color, fillAlpha.animatedValue)
+                    applyAlpha(fillColorComplex.color, fillAlpha.floatValue)
                 } else {
-                    applyAlpha(fillColor, fillAlpha.animatedValue)
+                    applyAlpha(fillColor, fillAlpha.floatValue)
                 }
             }
-            path.fillType = getPaintFillType(fillType)
-            canvas.drawPath(path, paint)
+            return paint
         }
 
         private fun drawStrokeIfNeeded(canvas: Canvas, path: Path, localMatrix: Matrix, strokeScaleFactor: Float) {
-            val strokeColorComplex = strokeColorComplex
-            val strokeColor = this.strokeColor.animatedValue
-            val strokeWidth = this.strokeWidth.animatedValue
-            if (strokeWidth == 0f) {
-                return
+            val paint = getStrokePaint(localMatrix, strokeScaleFactor) ?: return
+            canvas.drawPath(path, paint)
+        }
+
+        private fun willDrawStroke(): Boolean {
+            if (strokeWidth.floatValue == 0f) {
+                return false
             }
-            if ((strokeColorComplex == null || !strokeColorComplex.willDraw()) && strokeColor == Color.TRANSPARENT) {
-                return
+            val strokeColorComplex = strokeColorComplex
+            return (strokeColorComplex != null && strokeColorComplex.willDraw()) || strokeColor.intValue != Color.TRANSPARENT
+        }
+
+        /** @return The paint used to stroke the layer's shape, or null if it isn't stroked. */
+        private fun getStrokePaint(localMatrix: Matrix, strokeScaleFactor: Float): Paint? {
+            if (!willDrawStroke()) {
+                return null
             }
+            val strokeColorComplex = strokeColorComplex
+            val strokeColor = this.strokeColor.intValue
+            val strokeWidth = this.strokeWidth.floatValue
             if (tempStrokePaint == null) {
                 tempStrokePaint = Paint()
                 tempStrokePaint!!.style = Paint.Style.STROKE
@@ -174,7 +394,7 @@ abstract class RenderNode internal constructor(
             val paint = tempStrokePaint!!
             paint.strokeCap = getPaintStrokeLineCap(strokeLineCap)
             paint.strokeJoin = getPaintStrokeLineJoin(strokeLineJoin)
-            paint.strokeMiter = strokeMiterLimit.animatedValue
+            paint.strokeMiter = strokeMiterLimit.floatValue
             paint.strokeWidth = strokeWidth * strokeScaleFactor
             // TODO: can/should we cache path effects?
             paint.pathEffect = getDashPathEffect(strokeScaleFactor)
@@ -183,18 +403,17 @@ abstract class RenderNode internal constructor(
                 val shader = strokeColorComplex.shader!!
                 shader.setLocalMatrix(localMatrix)
                 paint.shader = shader
-                paint.alpha = Math.round((strokeAlpha.animatedValue * 255f))
+                paint.alpha = Math.round((strokeAlpha.floatValue * 255f))
             } else {
                 paint.shader = null
                 paint.alpha = 255
                 paint.color = if (strokeColorComplex != null) {
-                    applyAlpha(strokeColorComplex.color, strokeAlpha.animatedValue)
+                    applyAlpha(strokeColorComplex.color, strokeAlpha.floatValue)
                 } else {
-                    applyAlpha(strokeColor, strokeAlpha.animatedValue)
+                    applyAlpha(strokeColor, strokeAlpha.floatValue)
                 }
             }
-
-            canvas.drawPath(path, paint)
+            return paint
         }
 
         private fun getDashPathEffect(strokeScaleFactor: Float): DashPathEffect? {
@@ -215,7 +434,7 @@ abstract class RenderNode internal constructor(
                 tempStrokeDashArray[i] = strokeDashArray[i] * strokeScaleFactor
             }
             System.arraycopy(tempStrokeDashArray, 0, tempStrokeDashArray, initialSize, requiredSize - initialSize)
-            val strokeDashOffset = this.strokeDashOffset.animatedValue
+            val strokeDashOffset = this.strokeDashOffset.floatValue
             return DashPathEffect(tempStrokeDashArray, strokeDashOffset)
         }
 
@@ -285,6 +504,7 @@ abstract class RenderNode internal constructor(
         internal val strokeDashOffset = asAnimations(0f)
         internal var fillType = FillType.NON_ZERO
         internal var isScalingStroke = true
+        internal var isStrokeOutlineCached = false
 
         // Fill color.
 
@@ -525,6 +745,22 @@ abstract class RenderNode internal constructor(
             return self
         }
 
+        // Stroke outline caching.
+
+        /**
+         * Caches the outline of the node's stroke, so that the stroke can be drawn as a fill
+         * instead of being stroked each time the node is drawn. Stroking wide paths with round
+         * joins and caps is expensive, so this speeds up drawing nodes whose stroke geometry
+         * rarely changes. The outline is recomputed whenever the node's geometry, stroke
+         * properties, or on-screen scale change, so it should be left disabled (the default)
+         * for nodes whose strokes animate. Shape nodes that are drawn as canvas primitives
+         * (i.e. circles that aren't trimmed or dashed) are never outlined.
+         */
+        fun cacheStrokeOutline(isStrokeOutlineCached: Boolean): B {
+            this.isStrokeOutlineCached = isStrokeOutlineCached
+            return self
+        }
+
         abstract override fun build(): RenderNode
     }
 
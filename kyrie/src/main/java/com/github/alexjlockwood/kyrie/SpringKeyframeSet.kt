@@ -0,0 +1,140 @@
+package com.github.alexjlockwood.kyrie
+
+/** The rate at which the spring's trajectory is sampled, in samples per second. */
+private const val SAMPLES_PER_SECOND = 120
+/**
+ * The spring is considered settled once it stays within this fraction of its maximum
+ * displacement from the end value.
+ */
+private const val SETTLE_THRESHOLD = 1.0 / 1000
+/** Bounds the size of the sample table for barely damped springs. */
+private const val MAX_DURATION_SECONDS = 60.0
+
+/**
+ * A [KeyframeSet] that animates a float value along the trajectory of a damped spring. The
+ * spring's trajectory is computed once when the keyframe set is created and stored in a table of
+ * evenly spaced samples spanning the spring's settle duration, so evaluating the spring each
+ * frame takes a single table lookup.
+ */
+internal class SpringKeyframeSet(
+        startValue: Float,
+        private val endValue: Float,
+        stiffness: Float,
+        dampingRatio: Float,
+        initialVelocity: Float
+) : KeyframeSet<Float>() {
+
+    private val samples: FloatArray
+
+    /** The time it takes for the spring to settle at its end value, in milliseconds. */
+    val settleDuration: Long
+
+    override val keyframes: List<Keyframe<Float>> = emptyList()
+
+    init {
+        if (stiffness <= 0) {
+            throw IllegalArgumentException("Stiffness must be positive: $stiffness")
+        }
+        if (dampingRatio <= 0) {
+            throw IllegalArgumentException("Damping ratio must be positive: $dampingRatio")
+        }
+        val spring = Spring(startValue - endValue, stiffness.toDouble(), dampingRatio.toDouble(), initialVelocity.toDouble())
+
+        // Sample the trajectory until the spring has decayed well past the settle threshold,
+        // then find the last sample at which the spring is still visibly moving.
+        val maxNumSamples = (spring.maxDuration * SAMPLES_PER_SECOND).toInt() + 2
+        val trajectory = DoubleArray(maxNumSamples) { spring.getDisplacement(it.toDouble() / SAMPLES_PER_SECOND) }
+        var maxDisplacement = 0.0
+        for (displacement in trajectory) {
+            maxDisplacement = Math.max(maxDisplacement, Math.abs(displacement))
+        }
+        var numSamples = maxNumSamples
+        while (numSamples > 1 && Math.abs(trajectory[numSamples - 1]) <= maxDisplacement * SETTLE_THRESHOLD) {
+            numSamples--
+        }
+        // Include the first settled sample, which is snapped to the end value below.
+        numSamples = Math.min(numSamples + 1, maxNumSamples)
+
+        samples = FloatArray(numSamples) { (endValue + trajectory[it]).toFloat() }
+        samples[0] = startValue
+        samples[numSamples - 1] = endValue
+        settleDuration = Math.round((numSamples - 1) * 1000.0 / SAMPLES_PER_SECOND)
+    }
+
+    override fun getAnimatedValue(fraction: Float): Float {
+        return getAnimatedFloatValue(fraction)
+    }
+
+    override fun getAnimatedFloatValue(fraction: Float): Float {
+        val samples = samples
+        val lastIndex = samples.size - 1
+        if (fraction <= 0 || lastIndex == 0) {
+            return samples[0]
+        }
+        if (fraction >= 1) {
+            return endValue
+        }
+        val position = fraction * lastIndex
+        val index = position.toInt()
+        val start = samples[index]
+        return start + (samples[index + 1] - start) * (position - index)
+    }
+
+    /**
+     * The closed-form solution of a damped harmonic oscillator, expressed as the displacement from
+     * its rest position over time.
+     */
+    private class Spring(
+            private val initialDisplacement: Double,
+            stiffness: Double,
+            private val dampingRatio: Double,
+            private val initialVelocity: Double
+    ) {
+        private val naturalFrequency = Math.sqrt(stiffness)
+
+        /** An upper bound on the time (in seconds) it takes the spring to settle. */
+        val maxDuration: Double
+
+        init {
+            // The slowest rate at which the spring's displacement decays.
+            val decayRate = if (dampingRatio < 1) {
+                dampingRatio * naturalFrequency
+            } else {
+                naturalFrequency * (dampingRatio - Math.sqrt(dampingRatio * dampingRatio - 1))
+            }
+            // Critically damped springs decay at a rate of t * e^(-wt), so allow some extra time.
+            maxDuration = Math.min(2 * Math.log(1 / SETTLE_THRESHOLD) / decayRate, MAX_DURATION_SECONDS)
+        }
+
+        fun getDisplacement(time: Double): Double {
+            val x0 = initialDisplacement
+            val v0 = initialVelocity
+            val w = naturalFrequency
+            val z = dampingRatio
+            return when {
+                z < 1 -> {
+                    // Under damped.
+                    val wd = w * Math.sqrt(1 - z * z)
+                    val a = x0
+                    val b = (z * w * x0 + v0) / wd
+                    Math.exp(-z * w * time) * (a * Math.cos(wd * time) + b * Math.sin(wd * time))
+                }
+                z == 1.0 -> {
+                    // Critically damped.
+                    val a = x0
+                    val b = v0 + w * x0
+                    (a + b * time) * Math.exp(-w * time)
+                }
+                else -> {
+                    // Over damped.
+                    val s = w * Math.sqrt(z * z - 1)
+                    val r1 = -z * w + s
+                    val r2 = -z * w - s
+                    val a = x0 - (r2 * x0 - v0) / (r2 - r1)
+                    val b = (r2 * x0 - v0) / (r2 - r1)
+                    a * Math.exp(r2 * time) + b * Math.exp(r1 * time)
+                }
+            }
+        }
+    }
+}
@@ -21,13 +21,13 @@ abstract class TransformNode internal constructor(
     abstract override fun toLayer(timeline: PropertyTimeline): TransformLayer
 
     internal abstract class TransformLayer(private val timeline: PropertyTimeline, node: TransformNode) : Layer {
-        private val rotation = registerAnimatableProperty(node.rotation)
-        private val pivotX = registerAnimatableProperty(node.pivotX)
-        private val pivotY = registerAnimatableProperty(node.pivotY)
-        private val scaleX = registerAnimatableProperty(node.scaleX)
-        private val scaleY = registerAnimatableProperty(node.scaleY)
-        private val translateX = registerAnimatableProperty(node.translateX)
-        private val translateY = registerAnimatableProperty(node.translateY)
+        private val rotation = registerFloatProperty(node.rotation)
+        private val pivotX = registerFloatProperty(node.pivotX)
+        private val pivotY = registerFloatProperty(node.pivotY)
+        private val scaleX = registerFloatProperty(node.scaleX)
+        private val scaleY = registerFloatProperty(node.scaleY)
+        private val translateX = registerFloatProperty(node.translateX)
+        private val translateY = registerFloatProperty(node.translateY)
 
         private val tempMatrix = Matrix()
 
@@ -38,14 +38,26 @@ abstract class TransformNode internal constructor(
             return timeline.registerAnimatableProperty(animations)
         }
 
+        fun registerFloatProperty(animations: List<Animation<*, Float>>): FloatProperty {
+            return timeline.registerFloatProperty(animations)
+        }
+
+        fun registerPathDataProperty(animations: List<Animation<*, PathData>>): Property<PathData> {
+            return timeline.registerPathDataProperty(animations)
+        }
+
+        fun registerIntProperty(animations: List<Animation<*, Int>>): IntProperty {
+            return timeline.registerIntProperty(animations)
+        }
+
         override fun draw(canvas: Canvas, parentMatrix: Matrix, viewportScale: PointF) {
-            val rotation = this.rotation.animatedValue
-            val pivotX = this.pivotX.animatedValue
-            val pivotY = this.pivotY.animatedValue
-            val scaleX = this.scaleX.animatedValue
-            val scaleY = this.scaleY.animatedValue
-            val translateX = this.translateX.animatedValue
-            val translateY = this.translateY.animatedValue
+            val rotation = this.rotation.floatValue
+            val pivotX = this.pivotX.floatValue
+            val pivotY = this.pivotY.floatValue
+            val scaleX = this.scaleX.floatValue
+            val scaleY = this.scaleY.floatValue
+            val translateX = this.translateX.floatValue
+            val translateY = this.translateY.floatValue
             tempMatrix.set(parentMatrix)
             if (translateX + pivotX != 0f || translateY + pivotY != 0f) {
                 tempMatrix.preTranslate(translateX + pivotX, translateY + pivotY)
@@ -3,7 +3,6 @@ package com.example.kyrie;
 import android.graphics.Color;
 import android.graphics.PointF;
 import android.os.Bundle;
-import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -21,7 +20,6 @@ import com.github.alexjlockwood.kyrie.PathData;
 import com.github.alexjlockwood.kyrie.PathNode;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class PolygonsFragment extends Fragment {
@@ -85,16 +83,14 @@ public class PolygonsFragment extends Fragment {
     for (Polygon polygon : polygons) {
       builder.child(
           PathNode.builder()
-              .pathData(PathData.parse(polygon.pathData))
+              .pathData(polygon.pathData)
               .strokeWidth(4f)
               .strokeColor(polygon.color));
     }
 
     for (Polygon polygon : polygons) {
-      final PathData pathData =
-          PathData.parse(TextUtils.join(" ", Collections.nCopies(polygon.laps, polygon.pathData)));
       final Animation<PointF, PointF> pathMotion =
-          Animation.ofPathMotion(PathData.toPath(pathData))
+          Animation.ofPathMotion(pointsToPathData(polygon.points, polygon.laps))
               .repeatCount(Animation.INFINITE)
               .duration(DURATION);
       builder.child(
@@ -117,7 +113,7 @@ public class PolygonsFragment extends Fragment {
       final float totalLength = length * polygon.laps;
       builder.child(
           PathNode.builder()
-              .pathData(PathData.parse(polygon.pathData))
+              .pathData(polygon.pathData)
               .strokeWidth(4f)
               .strokeColor(polygon.color)
               .strokeDashArray(
@@ -133,12 +129,29 @@ public class PolygonsFragment extends Fragment {
     return builder.build();
   }
 
+  /** Builds a path that traces the given points the given number of times. */
+  private static PathData pointsToPathData(List<PointF> points, int laps) {
+    final PathData.Builder builder = PathData.builder();
+    for (int i = 0; i < laps; i++) {
+      for (int j = 0, size = points.size(); j < size; j++) {
+        final PointF p = points.get(j);
+        if (j == 0) {
+          builder.moveTo(p.x, p.y);
+        } else {
+          builder.lineTo(p.x, p.y);
+        }
+      }
+    }
+    return builder.build();
+  }
+
   private static class Polygon {
     final int sides;
     @ColorInt final int color;
     final float radius;
     final int laps;
-    final String pathData;
+    final List<PointF> points;
+    final PathData pathData;
     final float length;
 
     Polygon(int sides, @ColorInt int color, float radius, int laps) {
@@ -146,8 +159,8 @@ public class PolygonsFragment extends Fragment {
       this.color = color;
       this.radius = radius;
       this.laps = laps;
-      final List<PointF> points = getPoints(sides, radius);
-      this.pathData = pointsToPathData(points);
+      this.points = getPoints(sides, radius);
+      this.pathData = pointsToPathData(points, 1);
       this.length = pointsToLength(points);
     }
 
@@ -168,14 +181,6 @@ public class PolygonsFragment extends Fragment {
           (VIEWPORT_HEIGHT / 2) + (float) (radius * Math.sin(theta)));
     }
 
-    private static String pointsToPathData(List<PointF> points) {
-      final StringBuilder sb = new StringBuilder("M");
-      for (PointF p : points) {
-        sb.append(" ").append(p.x).append(" ").append(p.y);
-      }
-      return sb.toString();
-    }
-
     private static float pointsToLength(List<PointF> points) {
       float length = 0;
       for (int i = 1, size = points.size(); i < size; i++) {